@@ -0,0 +1,205 @@
+package com.josesamuel.logviewer.log;
+
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Older lines of a live log, packed in to blocks of about {@link #BLOCK_SIZE} bytes of text that are compressed with a {@link Deflater}.
+ * Log lines compress several times, so many more of them are kept in the same memory than as text.
+ * A block is only decompressed when one of its lines is asked for, and the last one decompressed is kept for the lines after it.
+ * The lines are added at the end, and once the compressed blocks take more than the size they are given, the oldest ones are dropped.
+ */
+public class CompressedLogLines implements LogLines {
+
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    private final long maxSize;
+    private final List<Block> blocks = new ArrayList<>();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream(BLOCK_SIZE);
+    private int pendingLines;
+    private long compressedSize;
+    private int size;
+    private Block decodedBlock;
+    //the number of pending lines decoded, or -1 if a block is decoded
+    private int decodedPendingLines = -1;
+    private String decodedText;
+    private int[] decodedLineStarts;
+
+    /**
+     * @param maxSize Most bytes taken by the compressed blocks
+     */
+    public CompressedLogLines(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Adds the lines in the given range of the given lines
+     */
+    public synchronized void addLines(LogLines lines, int start, int end) {
+        for (int i = start; i < end; i++) {
+            byte[] line = lines.getLine(i).getBytes(StandardCharsets.UTF_8);
+            pending.write(line, 0, line.length);
+            pending.write('\n');
+            pendingLines++;
+            size++;
+            if (pending.size() >= BLOCK_SIZE) {
+                compressPending();
+            }
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized String getLine(int index) {
+        int low = 0;
+        int high = blocks.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (blocks.get(middle).firstLine <= index) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (blocks.isEmpty() || index >= blocks.get(low).firstLine + blocks.get(low).lineCount) {
+            //the lines not yet compressed are after all the blocks
+            if (decodedPendingLines != pendingLines) {
+                decode(null, pending.toByteArray(), pending.size(), pendingLines);
+                decodedPendingLines = pendingLines;
+            }
+            return getDecodedLine(index - (size - pendingLines));
+        }
+        Block block = blocks.get(low);
+        if (block != decodedBlock || decodedPendingLines >= 0) {
+            byte[] text = decompress(block);
+            decode(block, text, text.length, block.lineCount);
+        }
+        return getDecodedLine(index - block.firstLine);
+    }
+
+    /**
+     * Returns the bytes taken by the compressed blocks
+     */
+    public synchronized long getCompressedSize() {
+        return compressedSize;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Removes all the lines
+     */
+    public synchronized void clear() {
+        blocks.clear();
+        pending.reset();
+        pendingLines = 0;
+        compressedSize = 0;
+        size = 0;
+        decodedBlock = null;
+        decodedPendingLines = -1;
+        decodedText = null;
+        decodedLineStarts = null;
+    }
+
+    /**
+     * Compresses the pending lines in to a block, dropping the oldest blocks if they take too much memory
+     */
+    private void compressPending() {
+        Deflater deflater = new Deflater();
+        byte[] compressed;
+        try {
+            deflater.setInput(pending.toByteArray());
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(pending.size() / 4);
+            byte[] buffer = new byte[BLOCK_SIZE / 4];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            compressed = out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+        blocks.add(new Block(compressed, pending.size(), size - pendingLines, pendingLines));
+        compressedSize += compressed.length;
+        pending.reset();
+        pendingLines = 0;
+        decodedPendingLines = -1;
+        while (compressedSize > maxSize && blocks.size() > 1) {
+            Block oldest = blocks.remove(0);
+            compressedSize -= oldest.data.length;
+            size -= oldest.lineCount;
+            for (Block block : blocks) {
+                block.firstLine -= oldest.lineCount;
+            }
+        }
+    }
+
+    private static byte[] decompress(Block block) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(block.data);
+            byte[] text = new byte[block.textSize];
+            int length = 0;
+            while (length < text.length && !inflater.finished()) {
+                length += inflater.inflate(text, length, text.length - length);
+            }
+            return text;
+        } catch (DataFormatException ex) {
+            throw new IllegalStateException(ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Decodes the text of a block in to its lines, keeping them for the lines asked for after it
+     */
+    private void decode(Block block, byte[] text, int length, int lineCount) {
+        decodedBlock = block;
+        decodedPendingLines = -1;
+        decodedText = new String(text, 0, length, StandardCharsets.UTF_8);
+        decodedLineStarts = new int[lineCount + 1];
+        int line = 1;
+        for (int i = 0; i < decodedText.length() && line < lineCount; i++) {
+            if (decodedText.charAt(i) == '\n') {
+                decodedLineStarts[line++] = i + 1;
+            }
+        }
+        decodedLineStarts[lineCount] = decodedText.length();
+    }
+
+    private String getDecodedLine(int index) {
+        //without the line break
+        return decodedText.substring(decodedLineStarts[index], decodedLineStarts[index + 1] - 1);
+    }
+
+    /**
+     * Lines of the log compressed together
+     */
+    private static final class Block {
+
+        private final byte[] data;
+        private final int textSize;
+        private final int lineCount;
+        private int firstLine;
+
+        private Block(byte[] data, int textSize, int firstLine, int lineCount) {
+            this.data = data;
+            this.textSize = textSize;
+            this.firstLine = firstLine;
+            this.lineCount = lineCount;
+        }
+    }
+}
@@ -14,9 +14,21 @@ public interface LogDataListener {
     void onLogLine(String log, LogProcess process);
 
     /**
-     * Called when a data of log consisting of multiple lines are available
+     * Called when the lines of the given store from start to end are available.
+     * The store is kept by the provider and grows as more lines are read, the lines before start were already sent.
      */
-    void onLogData(String log);
+    void onLogData(LogStore logStore, int start, int end);
+
+    /**
+     * Called when the log is available as {@link LogLines}, whose lines are read only when needed
+     */
+    void onLogLines(LogLines logLines);
+
+    /**
+     * Called when lines are read that go before all the lines sent so far.
+     * The given lines replace the ones sent with {@link #onLogLines}, and only the first count of them are new.
+     */
+    void onOlderLogLines(LogLines logLines, int count);
 
     /**
      * Called when the data needs to be cleard
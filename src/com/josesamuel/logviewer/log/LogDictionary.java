@@ -0,0 +1,121 @@
+package com.josesamuel.logviewer.log;
+
+
+import java.util.Arrays;
+
+/**
+ * Dictionary of the names found in the lines of one source, like tags, packages and file names, that gives each name an int id.
+ * The names repeat on almost every line but there are only a few of them, so a line keeps the id of its names instead of copies of them.
+ * A name is looked up straight from the text of the line, so that nothing is allocated for the names that are already known.
+ * The ids are given in order from 0 and stay the same for the life of the dictionary.
+ */
+public class LogDictionary {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private String[] names = new String[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    //ids plus one of the names by their hash, 0 for a free slot
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+    private int size;
+
+    /**
+     * Returns the id of the given name, adding it if it is new
+     */
+    public int getId(String name) {
+        return getId(name, 0, name.length());
+    }
+
+    /**
+     * Returns the id of the name in the given range of the text, adding it if it is new
+     */
+    public synchronized int getId(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int slot = findSlot(hash, text, start, end);
+        if (slots[slot] != 0) {
+            return slots[slot] - 1;
+        }
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        int id = size++;
+        names[id] = text.subSequence(start, end).toString();
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+        //kept at most half full, so the probes stay short
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id of the name in the given range of the text, or -1 if it is not in the dictionary
+     */
+    public synchronized int findId(CharSequence text, int start, int end) {
+        return slots[findSlot(hash(text, start, end), text, start, end)] - 1;
+    }
+
+    /**
+     * Returns the name with the given id
+     */
+    public synchronized String getName(int id) {
+        return names[id];
+    }
+
+    /**
+     * Returns the number of names, which is also the next id to be given
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the slot of the name, or the free slot where it goes
+     */
+    private int findSlot(int hash, CharSequence text, int start, int end) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && equals(names[id], text, start, end)) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    private static int hash(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(String name, CharSequence text, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,19 @@
+package com.josesamuel.logviewer.log;
+
+
+/**
+ * Random access list of log lines.
+ * Lines are only decoded from the source when they are requested.
+ */
+public interface LogLines {
+
+    /**
+     * Returns the number of lines
+     */
+    int size();
+
+    /**
+     * Returns the line at the given index
+     */
+    String getLine(int index);
+}
@@ -19,6 +19,7 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -34,7 +35,7 @@ public class LogSourceManager implements Disposable, AndroidDebugBridge.IClientC
     private DeviceContext deviceContext;
     private Project project;
     private java.util.Map<IDevice, DeviceLogSource> deviceLogSourcesMap;
-    private java.util.Map<File, FileLogSource> fileLogSourcesMap;
+    private java.util.Map<List<File>, FileLogSource> fileLogSourcesMap;
     private LogSourceManagerListener logSourceManagerListener;
     private LogSource selectedSource;
     private AndroidDebugBridge myBridge;
@@ -157,10 +158,22 @@ public class LogSourceManager implements Disposable, AndroidDebugBridge.IClientC
     }
 
     /**
-     * Returns the {@link FileLogSource} for the given file
+     * Returns the {@link FileLogSource} for the given files
      */
-    private FileLogSource getFileSource(File file) {
-        return fileLogSourcesMap.get(file);
+    private FileLogSource getFileSource(List<File> files) {
+        return fileLogSourcesMap.get(files);
+    }
+
+    /**
+     * Returns the {@link FileLogSource} whose source is the given device
+     */
+    private FileLogSource getFileSource(FileDevice device) {
+        for (FileLogSource fileLogSource : fileLogSourcesMap.values()) {
+            if (fileLogSource.getSource() == device) {
+                return fileLogSource;
+            }
+        }
+        return null;
     }
 
     /**
@@ -171,7 +184,7 @@ public class LogSourceManager implements Disposable, AndroidDebugBridge.IClientC
         if (device != null) {
             source = getDeviceSource(device);
             if (source == null && device instanceof FileDevice) {
-                source = getFileSource(((FileDevice) device).getFile());
+                source = getFileSource((FileDevice) device);
             }
         }
         return source;
@@ -244,10 +257,15 @@ public class LogSourceManager implements Disposable, AndroidDebugBridge.IClientC
 
     @Override
     public void onFileDropped(File file) {
-        FileLogSource fileLogSource = getFileSource(file);
+        onFilesDropped(Collections.singletonList(file));
+    }
+
+    @Override
+    public void onFilesDropped(List<File> files) {
+        FileLogSource fileLogSource = getFileSource(files);
         if (fileLogSource == null) {
-            fileLogSource = new FileLogSource(project, file);
-            fileLogSourcesMap.put(file, fileLogSource);
+            fileLogSource = new FileLogSource(project, files);
+            fileLogSourcesMap.put(new ArrayList<>(files), fileLogSource);
         }
         selectedSource = fileLogSource;
         logSourceManagerListener.onSourceListChanged();
@@ -267,6 +285,13 @@ public class LogSourceManager implements Disposable, AndroidDebugBridge.IClientC
         return selectedSource instanceof DeviceLogSource;
     }
 
+    /**
+     * Returns the selected {@link FileLogSource}, or null if a file is not selected
+     */
+    public FileLogSource getSelectedFileSource() {
+        return selectedSource instanceof FileLogSource ? (FileLogSource) selectedSource : null;
+    }
+
 
     /**
      * Listener to get notified about source list and selection changes
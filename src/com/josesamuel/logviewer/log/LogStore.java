@@ -0,0 +1,551 @@
+package com.josesamuel.logviewer.log;
+
+
+import java.io.Closeable;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Store of log lines that keeps each field of the lines in its own column, instead of keeping the lines as text.
+ * The time, pid, tid and level of a line are kept in primitive arrays, its tag and package as ids of a {@link LogDictionary},
+ * and its message as a range of UTF-8 bytes of a {@link MessageArena}, which is off the heap. The "[name]" of the file that starts
+ * the message of the lines of archives is kept as an id of a dictionary of its own as well. The lines are built back as text only when they are needed,
+ * so the store takes a few times less memory than the text, and the filters can check the fields of a line without parsing it.
+ * Lines that are not in the format of the log viewer, "MM-dd HH:mm:ss.SSS pid-tid/package L/tag: message",
+ * are kept whole as their message, without a level.
+ * The store is synchronized, so it can be read while lines are added to it from another thread.
+ * Once its messages take the most memory it is given, it is full and further lines are dropped.
+ * It should be {@link #close() closed} when it is no longer used, to free the memory of its messages right away.
+ */
+public class LogStore implements LogLines, Closeable {
+
+    /**
+     * Most memory taken by the messages of a store by default
+     */
+    public static final long DEFAULT_MAX_MEMORY_SIZE = 2048L * 1024 * 1024;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int BUFFER_SIZE = 4096;
+    private static final int MAX_KEPT_BUFFER_SIZE = 1024 * 1024;
+    private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+    private static final String LEVELS = "VDIWEA";
+    private static final int MAX_LABELS = 1024;
+    private static final int MAX_LABEL_LENGTH = 256;
+
+    private int size;
+    //the lines before it in the columns were removed
+    private int first;
+    private long[] times = new long[INITIAL_CAPACITY];
+    private int[] pids = new int[INITIAL_CAPACITY];
+    private int[] tids = new int[INITIAL_CAPACITY];
+    private byte[] levels = new byte[INITIAL_CAPACITY];
+    private int[] tagIds = new int[INITIAL_CAPACITY];
+    private int[] packageIds = new int[INITIAL_CAPACITY];
+    private int[] labelIds = new int[INITIAL_CAPACITY];
+    //the message of line i is from messageStarts[i] to messageStarts[i + 1] of the arena
+    private long[] messageStarts = new long[INITIAL_CAPACITY + 1];
+    private final long maxMemorySize;
+    private MessageArena arena;
+    //messages are encoded and decoded through this buffer, as the arena is not on the heap
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private boolean full;
+    private boolean closed;
+    private LogDictionary names = new LogDictionary();
+    private LogDictionary labels = new LogDictionary();
+
+    /**
+     * Creates a store whose messages take at most {@link #DEFAULT_MAX_MEMORY_SIZE}
+     */
+    public LogStore() {
+        this(DEFAULT_MAX_MEMORY_SIZE);
+    }
+
+    /**
+     * @param maxMemorySize Most bytes taken by the messages of the lines
+     */
+    public LogStore(long maxMemorySize) {
+        this.maxMemorySize = maxMemorySize;
+        this.arena = new MessageArena(maxMemorySize);
+    }
+
+    /**
+     * Adds a line
+     */
+    public synchronized void add(CharSequence line) {
+        add(line, 0, line.length());
+    }
+
+    /**
+     * Adds the lines of the given text, which are separated by '\n'
+     */
+    public synchronized void addLines(CharSequence text) {
+        int lineStart = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) == '\n') {
+                add(text, lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart < length) {
+            add(text, lineStart, length);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the line at the given index, built back in to its text
+     */
+    @Override
+    public synchronized String getLine(int index) {
+        if (levels[first + index] == 0) {
+            return getMessage(index);
+        }
+        StringBuilder line = new StringBuilder(64 + (int) (messageStarts[first + index + 1] - messageStarts[first + index]));
+        appendTime(line, times[first + index]);
+        line.append(' ').append(pids[first + index]).append('-').append(tids[first + index]).append('/').append(names.getName(packageIds[first + index]))
+                .append(' ').append((char) levels[first + index]).append('/').append(names.getName(tagIds[first + index])).append(": ");
+        if (labelIds[first + index] >= 0) {
+            line.append('[').append(labels.getName(labelIds[first + index])).append(']');
+        }
+        appendMessage(line, index);
+        return line.toString();
+    }
+
+    /**
+     * Returns whether the line has a header with its fields, or is only a message
+     */
+    public synchronized boolean hasHeader(int index) {
+        return levels[first + index] != 0;
+    }
+
+    /**
+     * Returns the time of the line as MMddHHmmssSSS, like 0314100230123 for "03-14 10:02:30.123"
+     */
+    public synchronized long getTime(int index) {
+        return times[first + index];
+    }
+
+    public synchronized int getPid(int index) {
+        return pids[first + index];
+    }
+
+    public synchronized int getTid(int index) {
+        return tids[first + index];
+    }
+
+    /**
+     * Returns the letter of the level of the line, like 'E', or 0 if the line has no header
+     */
+    public synchronized char getLevel(int index) {
+        return (char) levels[first + index];
+    }
+
+    public synchronized String getTag(int index) {
+        return levels[first + index] != 0 ? names.getName(tagIds[first + index]) : null;
+    }
+
+    public synchronized String getPackage(int index) {
+        return levels[first + index] != 0 ? names.getName(packageIds[first + index]) : null;
+    }
+
+    /**
+     * Returns the id of the tag of the line in the {@link #getDictionary() dictionary}, or -1 if the line has no header
+     */
+    public synchronized int getTagId(int index) {
+        return tagIds[first + index];
+    }
+
+    /**
+     * Returns the id of the package of the line in the {@link #getDictionary() dictionary}, or -1 if the line has no header
+     */
+    public synchronized int getPackageId(int index) {
+        return packageIds[first + index];
+    }
+
+    /**
+     * Returns the dictionary of the tags and packages of the lines, which is replaced when the store is cleared
+     */
+    public synchronized LogDictionary getDictionary() {
+        return names;
+    }
+
+    /**
+     * Returns the name of the file the line was labelled with, or null if its message does not start with one
+     */
+    public synchronized String getLabel(int index) {
+        return labelIds[first + index] >= 0 ? labels.getName(labelIds[first + index]) : null;
+    }
+
+    /**
+     * Returns the message of the line, or the whole line if it has no header
+     */
+    public synchronized String getMessage(int index) {
+        if (labelIds[first + index] >= 0) {
+            StringBuilder message = new StringBuilder();
+            message.append('[').append(labels.getName(labelIds[first + index])).append(']');
+            appendMessage(message, index);
+            return message.toString();
+        }
+        int length = readMessage(index);
+        for (int i = 0; i < length; i++) {
+            if (buffer[i] < 0) {
+                return decode(length, StandardCharsets.UTF_8);
+            }
+        }
+        return decode(Math.max(0, length), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Returns the number of bytes of the messages of the lines
+     */
+    public synchronized long getMessageSize() {
+        return messageStarts[first + size] - messageStarts[first];
+    }
+
+    /**
+     * Returns the memory taken off the heap by the messages of the lines, which is taken in segments of a few megabytes
+     */
+    public synchronized long getMemorySize() {
+        return arena.getSize();
+    }
+
+    /**
+     * Returns the most memory that the messages of the lines can take
+     */
+    public long getMaxMemorySize() {
+        return maxMemorySize;
+    }
+
+    /**
+     * Returns whether the messages take the most memory they can, so that lines are no longer added
+     */
+    public synchronized boolean isFull() {
+        return full;
+    }
+
+    /**
+     * Removes the given number of lines from the start.
+     * It takes the same time however many lines are kept, as the lines are only moved down when the columns are full.
+     */
+    public synchronized void removeFirst(int count) {
+        count = Math.min(count, size);
+        first += count;
+        size -= count;
+        arena.releaseBefore(messageStarts[first]);
+        full = false;
+    }
+
+    /**
+     * Removes all the lines
+     */
+    public synchronized void clear() {
+        size = 0;
+        first = 0;
+        times = new long[INITIAL_CAPACITY];
+        pids = new int[INITIAL_CAPACITY];
+        tids = new int[INITIAL_CAPACITY];
+        levels = new byte[INITIAL_CAPACITY];
+        tagIds = new int[INITIAL_CAPACITY];
+        packageIds = new int[INITIAL_CAPACITY];
+        labelIds = new int[INITIAL_CAPACITY];
+        messageStarts = new long[INITIAL_CAPACITY + 1];
+        buffer = new byte[BUFFER_SIZE];
+        names = new LogDictionary();
+        labels = new LogDictionary();
+        arena.release();
+        if (!closed) {
+            arena = new MessageArena(maxMemorySize);
+        }
+        full = false;
+    }
+
+    /**
+     * Removes all the lines and frees the memory of their messages. No lines are added to the store afterwards,
+     * and the messages of the lines that are still asked for are empty.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        arena.release();
+        size = 0;
+    }
+
+    /**
+     * Adds the line in the given range of the text, splitting it in to the columns if it has a header
+     */
+    private void add(CharSequence text, int start, int end) {
+        if (full || closed) {
+            return;
+        }
+        ensureCapacity(size + 1);
+        int index = first + size;
+        int headerEnd = parseHeader(text, start, end);
+        //a char takes up to 3 bytes in UTF-8
+        if (!ensureBufferCapacity((end - headerEnd) * 3L)) {
+            full = true;
+            return;
+        }
+        if (headerEnd == start) {
+            levels[index] = 0;
+            tagIds[index] = -1;
+            packageIds[index] = -1;
+            labelIds[index] = -1;
+        }
+        int length = encode(text, headerEnd, end);
+        boolean added = arena.append(buffer, length) >= 0;
+        trimBuffer();
+        if (!added) {
+            full = true;
+            return;
+        }
+        messageStarts[index + 1] = arena.getEnd();
+        size++;
+    }
+
+    /**
+     * Parses the header of the line in to the columns of the next line, returns where its message starts.
+     * Returns the start of the line if it does not have a header in the exact format, so that it is kept as it is.
+     */
+    private int parseHeader(CharSequence text, int start, int end) {
+        int index = first + size;
+        //time, "MM-dd HH:mm:ss.SSS "
+        if (end - start < 19 || text.charAt(start + 2) != '-' || text.charAt(start + 5) != ' ' || text.charAt(start + 8) != ':'
+                || text.charAt(start + 11) != ':' || text.charAt(start + 14) != '.' || text.charAt(start + 18) != ' ') {
+            return start;
+        }
+        long time = 0;
+        for (int i = start; i < start + 18; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                time = time * 10 + c - '0';
+            } else if (i - start != 2 && i - start != 5 && i - start != 8 && i - start != 11 && i - start != 14) {
+                return start;
+            }
+        }
+        //pid-tid/package
+        int position = start + 19;
+        int pidEnd = parseNumber(text, position, end, '-');
+        if (pidEnd < 0) {
+            return start;
+        }
+        int tidEnd = parseNumber(text, pidEnd + 1, end, '/');
+        if (tidEnd < 0) {
+            return start;
+        }
+        int packageEnd = tidEnd + 1;
+        while (packageEnd < end && !isWhitespace(text.charAt(packageEnd))) {
+            packageEnd++;
+        }
+        //" L/tag: "
+        if (packageEnd == tidEnd + 1 || packageEnd + 3 >= end || text.charAt(packageEnd) != ' '
+                || LEVELS.indexOf(text.charAt(packageEnd + 1)) < 0 || text.charAt(packageEnd + 2) != '/') {
+            return start;
+        }
+        int tagStart = packageEnd + 3;
+        int tagEnd = tagStart;
+        while (tagEnd < end && text.charAt(tagEnd) != ' ') {
+            tagEnd++;
+        }
+        if (tagEnd == end || tagEnd - tagStart < 2 || text.charAt(tagEnd - 1) != ':') {
+            return start;
+        }
+        for (int i = tagEnd + 1; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                //not matched by the message pattern of the formatter, so the line is not a message
+                return start;
+            }
+        }
+        times[index] = time;
+        pids[index] = parseInt(text, position, pidEnd);
+        tids[index] = parseInt(text, pidEnd + 1, tidEnd);
+        packageIds[index] = names.getId(text, tidEnd + 1, packageEnd);
+        levels[index] = (byte) text.charAt(packageEnd + 1);
+        tagIds[index] = names.getId(text, tagStart, tagEnd - 1);
+        return parseLabel(text, tagEnd + 1, end);
+    }
+
+    /**
+     * Parses the "[name]" of the file at the start of the message in to the columns of the next line, returns where the rest of it starts.
+     * Once there are {@link #MAX_LABELS} of them, new ones are left in the message, as they are not likely file names.
+     */
+    private int parseLabel(CharSequence text, int start, int end) {
+        int index = first + size;
+        labelIds[index] = -1;
+        if (start == end || text.charAt(start) != '[') {
+            return start;
+        }
+        int labelEnd = start + 1;
+        int limit = (int) Math.min(end, start + 1L + MAX_LABEL_LENGTH);
+        while (labelEnd < limit && text.charAt(labelEnd) != ']') {
+            labelEnd++;
+        }
+        if (labelEnd == limit || labelEnd == start + 1) {
+            return start;
+        }
+        int labelId = labels.size() < MAX_LABELS ? labels.getId(text, start + 1, labelEnd) : labels.findId(text, start + 1, labelEnd);
+        if (labelId < 0) {
+            return start;
+        }
+        labelIds[index] = labelId;
+        return labelEnd + 1;
+    }
+
+    /**
+     * Returns the end of the number at the given position, which is followed by the given separator,
+     * or -1 if it is not a number that is written back the same, without leading zeros
+     */
+    private static int parseNumber(CharSequence text, int position, int end, char separator) {
+        int i = position;
+        while (i < end && i - position < 9 && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+            i++;
+        }
+        if (i == position || i == end || text.charAt(i) != separator || (text.charAt(position) == '0' && i - position > 1)) {
+            return -1;
+        }
+        return i;
+    }
+
+    private static int parseInt(CharSequence text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + text.charAt(i) - '0';
+        }
+        return value;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Makes room in the columns for the given number of lines
+     */
+    private void ensureCapacity(int lines) {
+        if (first + lines <= times.length) {
+            return;
+        }
+        if (first > 0) {
+            //the room of the removed lines is used first
+            System.arraycopy(times, first, times, 0, size);
+            System.arraycopy(pids, first, pids, 0, size);
+            System.arraycopy(tids, first, tids, 0, size);
+            System.arraycopy(levels, first, levels, 0, size);
+            System.arraycopy(tagIds, first, tagIds, 0, size);
+            System.arraycopy(packageIds, first, packageIds, 0, size);
+            System.arraycopy(labelIds, first, labelIds, 0, size);
+            System.arraycopy(messageStarts, first, messageStarts, 0, size + 1);
+            first = 0;
+        }
+        //grown once they are more than half full, so that the lines are moved down at most once for every half of them removed
+        if (lines > times.length / 2) {
+            int newCapacity = Math.max(lines, times.length * 2);
+            times = Arrays.copyOf(times, newCapacity);
+            pids = Arrays.copyOf(pids, newCapacity);
+            tids = Arrays.copyOf(tids, newCapacity);
+            levels = Arrays.copyOf(levels, newCapacity);
+            tagIds = Arrays.copyOf(tagIds, newCapacity);
+            packageIds = Arrays.copyOf(packageIds, newCapacity);
+            labelIds = Arrays.copyOf(labelIds, newCapacity);
+            messageStarts = Arrays.copyOf(messageStarts, newCapacity + 1);
+        }
+    }
+
+    /**
+     * Grows the buffer to the given size, returns false if it can not be that large
+     */
+    private boolean ensureBufferCapacity(long capacity) {
+        if (capacity > buffer.length) {
+            if (capacity > MAX_BUFFER_SIZE) {
+                return false;
+            }
+            buffer = new byte[(int) Math.min(MAX_BUFFER_SIZE, Math.max(capacity, buffer.length * 2L))];
+        }
+        return true;
+    }
+
+    /**
+     * Lets go of the buffer grown for a very long line, so that it is not kept on the heap
+     */
+    private void trimBuffer() {
+        if (buffer.length > MAX_KEPT_BUFFER_SIZE) {
+            buffer = new byte[BUFFER_SIZE];
+        }
+    }
+
+    /**
+     * Reads the message of the line in to the buffer, returns its length, or -1 if its memory was freed
+     */
+    private int readMessage(int index) {
+        long start = messageStarts[first + index];
+        int length = (int) (messageStarts[first + index + 1] - start);
+        ensureBufferCapacity(length);
+        return arena.read(start, buffer, length) ? length : -1;
+    }
+
+    private String decode(int length, Charset charset) {
+        String text = new String(buffer, 0, length, charset);
+        trimBuffer();
+        return text;
+    }
+
+    /**
+     * Writes the given range of the text to the buffer as UTF-8, returns the number of bytes written
+     */
+    private int encode(CharSequence text, int start, int end) {
+        byte[] buffer = this.buffer;
+        int position = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xc0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                //like String.getBytes, a lone surrogate can not be encoded
+                buffer[position++] = '?';
+            } else {
+                buffer[position++] = (byte) (0xe0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        return position;
+    }
+
+    private void appendMessage(StringBuilder line, int index) {
+        int length = readMessage(index);
+        for (int i = 0; i < length; i++) {
+            if (buffer[i] < 0) {
+                line.append(new String(buffer, i, length - i, StandardCharsets.UTF_8));
+                break;
+            }
+            line.append((char) buffer[i]);
+        }
+        trimBuffer();
+    }
+
+    private static void appendTime(StringBuilder line, long time) {
+        //MMddHHmmssSSS in to "MM-dd HH:mm:ss.SSS"
+        char[] digits = new char[13];
+        for (int i = 12; i >= 0; i--) {
+            digits[i] = (char) ('0' + time % 10);
+            time /= 10;
+        }
+        line.append(digits, 0, 2).append('-').append(digits, 2, 2).append(' ').append(digits, 4, 2).append(':')
+                .append(digits, 6, 2).append(':').append(digits, 8, 2).append('.').append(digits, 10, 3);
+    }
+}
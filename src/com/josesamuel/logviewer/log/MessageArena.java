@@ -0,0 +1,256 @@
+package com.josesamuel.logviewer.log;
+
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bytes of the messages of a {@link LogStore}, kept off the heap in direct buffers of {@link #SEGMENT_SIZE} bytes,
+ * so that large logs do not fill the heap that is shared with the IDE, and do not add to its garbage collections.
+ * The bytes are appended at growing positions, and the segments before a position can be released once the lines in them are removed.
+ * The arena takes at most the size it is created with, and its memory is freed as soon as it is {@link #release() released},
+ * instead of whenever its buffers are collected.
+ * Not thread safe, it is guarded by its store.
+ */
+public class MessageArena {
+
+    static final int SEGMENT_SHIFT = 22;
+    static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+
+    private static final AtomicLong totalSize = new AtomicLong();
+    //buffers that could not be freed right away, they are counted until they are collected
+    private static final ReferenceQueue<ByteBuffer> collectedBuffers = new ReferenceQueue<>();
+    private static final Set<Reference<ByteBuffer>> uncleanedBuffers = ConcurrentHashMap.newKeySet();
+
+    private final long maxSize;
+    //the segment at position p is segments[(p >>> SEGMENT_SHIFT) - firstSegment]
+    private ByteBuffer[] segments = new ByteBuffer[16];
+    private long firstSegment;
+    private int segmentCount;
+    private long end;
+    private boolean released;
+
+    /**
+     * @param maxSize Most bytes taken by the arena, rounded up to whole segments
+     */
+    public MessageArena(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the bytes taken off the heap by all the arenas
+     */
+    public static long getTotalSize() {
+        Reference<? extends ByteBuffer> collected;
+        while ((collected = collectedBuffers.poll()) != null) {
+            uncleanedBuffers.remove(collected);
+            totalSize.addAndGet(-SEGMENT_SIZE);
+        }
+        return totalSize.get();
+    }
+
+    /**
+     * Returns the bytes taken off the heap by this arena
+     */
+    public long getSize() {
+        return (long) segmentCount * SEGMENT_SIZE;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the position after the last byte
+     */
+    long getEnd() {
+        return end;
+    }
+
+    /**
+     * Appends the given bytes, returns the position they start at,
+     * or -1 if they do not fit within the size of the arena or it was released
+     */
+    long append(byte[] data, int length) {
+        if (released || !ensureCapacity(end + length)) {
+            return -1;
+        }
+        long start = end;
+        int offset = 0;
+        while (offset < length) {
+            ByteBuffer segment = getSegment(end);
+            int position = (int) (end & (SEGMENT_SIZE - 1));
+            int count = Math.min(length - offset, SEGMENT_SIZE - position);
+            segment.position(position);
+            segment.put(data, offset, count);
+            offset += count;
+            end += count;
+        }
+        return start;
+    }
+
+    /**
+     * Reads the bytes at the given position in to the start of the given array
+     *
+     * @return false if the bytes were released
+     */
+    boolean read(long position, byte[] out, int length) {
+        if (released || (position >>> SEGMENT_SHIFT) < firstSegment) {
+            return false;
+        }
+        int offset = 0;
+        while (offset < length) {
+            ByteBuffer segment = getSegment(position);
+            int segmentPosition = (int) (position & (SEGMENT_SIZE - 1));
+            int count = Math.min(length - offset, SEGMENT_SIZE - segmentPosition);
+            segment.position(segmentPosition);
+            segment.get(out, offset, count);
+            offset += count;
+            position += count;
+        }
+        return true;
+    }
+
+    /**
+     * Releases the segments that end at or before the given position
+     */
+    void releaseBefore(long position) {
+        long segment = position >>> SEGMENT_SHIFT;
+        int count = (int) Math.min(segmentCount, segment - firstSegment);
+        if (count <= 0) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            free(segments[i]);
+        }
+        System.arraycopy(segments, count, segments, 0, segmentCount - count);
+        Arrays.fill(segments, segmentCount - count, segmentCount, null);
+        segmentCount -= count;
+        firstSegment += count;
+    }
+
+    /**
+     * Frees all the memory of the arena. Nothing can be added to it or read from it afterwards.
+     */
+    void release() {
+        for (int i = 0; i < segmentCount; i++) {
+            free(segments[i]);
+        }
+        segments = new ByteBuffer[0];
+        segmentCount = 0;
+        released = true;
+    }
+
+    private ByteBuffer getSegment(long position) {
+        return segments[(int) ((position >>> SEGMENT_SHIFT) - firstSegment)];
+    }
+
+    /**
+     * Adds the segments up to the given position, returns false if they would take more than the size of the arena
+     */
+    private boolean ensureCapacity(long capacity) {
+        long lastSegment = (capacity - 1) >>> SEGMENT_SHIFT;
+        while (capacity > 0 && firstSegment + segmentCount <= lastSegment) {
+            if (getSize() + SEGMENT_SIZE > maxSize) {
+                return false;
+            }
+            ByteBuffer segment;
+            try {
+                segment = ByteBuffer.allocateDirect(SEGMENT_SIZE);
+            } catch (OutOfMemoryError ex) {
+                //the memory for direct buffers of the JVM is used up
+                return false;
+            }
+            if (segmentCount == segments.length) {
+                segments = Arrays.copyOf(segments, segmentCount * 2);
+            }
+            segments[segmentCount++] = segment;
+            totalSize.addAndGet(SEGMENT_SIZE);
+        }
+        return true;
+    }
+
+    /**
+     * Frees the memory of the direct buffer right away, with the cleaner of the JVM if it can be reached.
+     * Otherwise it is freed when the buffer is collected, and it is counted in the total size until then.
+     */
+    private static void free(ByteBuffer buffer) {
+        if (BufferCleaner.clean(buffer)) {
+            totalSize.addAndGet(-SEGMENT_SIZE);
+        } else {
+            uncleanedBuffers.add(new PhantomReference<>(buffer, collectedBuffers));
+        }
+    }
+
+    /**
+     * The cleaner of direct buffers of the JVM, looked up once when it is first used
+     */
+    private static final class BufferCleaner {
+
+        //Java 9 and later, Unsafe.invokeCleaner(buffer)
+        private static final Object UNSAFE;
+        private static final Method INVOKE_CLEANER;
+        //Java 8, ((DirectBuffer) buffer).cleaner().clean()
+        private static final Method CLEANER;
+        private static final Method CLEAN;
+
+        static {
+            Object unsafe = null;
+            Method invokeCleaner = null;
+            Method cleaner = null;
+            Method clean = null;
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+                unsafeField.setAccessible(true);
+                unsafe = unsafeField.get(null);
+            } catch (Throwable ex) {
+                unsafe = null;
+                invokeCleaner = null;
+                try {
+                    cleaner = ByteBuffer.allocateDirect(1).getClass().getMethod("cleaner");
+                    cleaner.setAccessible(true);
+                    clean = cleaner.getReturnType().getMethod("clean");
+                    clean.setAccessible(true);
+                } catch (Throwable ignored) {
+                    cleaner = null;
+                    clean = null;
+                }
+            }
+            UNSAFE = unsafe;
+            INVOKE_CLEANER = invokeCleaner;
+            CLEANER = cleaner;
+            CLEAN = clean;
+        }
+
+        /**
+         * Frees the memory of the buffer, returns false if it could not be freed
+         */
+        private static boolean clean(ByteBuffer buffer) {
+            try {
+                if (INVOKE_CLEANER != null) {
+                    INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                    return true;
+                }
+                if (CLEAN != null) {
+                    Object cleaner = CLEANER.invoke(buffer);
+                    if (cleaner != null) {
+                        CLEAN.invoke(cleaner);
+                        return true;
+                    }
+                }
+            } catch (Throwable ignored) {
+            }
+            return false;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import javax.swing.*;
 import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.Transferable;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -30,9 +31,14 @@ public class DnDHandler {
                 DnDNativeTarget.EventInfo eventInfo = (DnDNativeTarget.EventInfo) event.getTransferData(DataFlavor.javaFileListFlavor);
                 Transferable transferable = eventInfo.getTransferable();
                 List data = (List) transferable.getTransferData(DataFlavor.javaFileListFlavor);
+                List<File> files = new ArrayList<>();
                 for (Object aData : data) {
-                    dnDListener.onFileDropped((File) aData);
-                    break;
+                    files.add((File) aData);
+                }
+                if (files.size() == 1) {
+                    dnDListener.onFileDropped(files.get(0));
+                } else if (!files.isEmpty()) {
+                    dnDListener.onFilesDropped(files);
                 }
             } catch (Exception ignored) {
             }
@@ -1,6 +1,7 @@
 package com.josesamuel.logviewer.log.dnd;
 
 import java.io.File;
+import java.util.List;
 
 /**
  * Listener to get notified about file drop
@@ -11,4 +12,9 @@ public interface DnDListener {
      * Called when a file is dropped
      */
     void onFileDropped(File file);
+
+    /**
+     * Called when several files are dropped together
+     */
+    void onFilesDropped(List<File> files);
 }
@@ -18,12 +18,14 @@ import java.util.concurrent.TimeUnit;
 public class FileDevice implements IDevice {
 
     private File file;
+    private String name;
 
     /**
-     * Initialize with given file
+     * Initialize with given file, shown with the given name
      */
-    FileDevice(File file) {
+    FileDevice(File file, String name) {
         this.file = file;
+        this.name = name;
     }
 
     public File getFile() {
@@ -32,7 +34,7 @@ public class FileDevice implements IDevice {
 
     @Override
     public String getSerialNumber() {
-        return file.getName();
+        return name;
     }
 
     @Override
@@ -313,7 +315,7 @@ public class FileDevice implements IDevice {
 
     @Override
     public String getName() {
-        return file.getName();
+        return name;
     }
 
     @Override
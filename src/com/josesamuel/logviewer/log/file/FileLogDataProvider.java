@@ -2,43 +2,97 @@ package com.josesamuel.logviewer.log.file;
 
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
 import com.josesamuel.logviewer.util.UIUtil;
 import com.josesamuel.logviewer.log.LogDataListener;
 import com.josesamuel.logviewer.log.LogDataProvider;
+import com.josesamuel.logviewer.log.LogLines;
 import com.josesamuel.logviewer.log.LogProcess;
+import com.josesamuel.logviewer.log.LogStore;
+import com.josesamuel.logviewer.log.file.reader.LogFileFollower;
 import com.josesamuel.logviewer.log.file.reader.LogFileReader;
 import com.josesamuel.logviewer.log.file.reader.LogFileReaderFactory;
+import com.josesamuel.logviewer.log.file.reader.LogFileSection;
+import com.josesamuel.logviewer.log.file.reader.LogTimeRange;
 import com.josesamuel.logviewer.util.SingleTaskBackgroundExecutor;
+import com.josesamuel.logviewer.view.AndroidLogcatPreferences;
+import com.josesamuel.logviewer.view.LogFileSectionDialog;
 
+import javax.swing.*;
+import java.io.Closeable;
 import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 
 /**
  * {@link LogDataProvider} for a {@link FileLogSource}
- * This reads all the contents from the file and returns it as the data
+ * This reads all the contents from the file, and returns the data in batches as it is read.
+ * The lines read are kept in a {@link LogStore}, and are sent to the listener as ranges of it.
+ * When the file is read newest first, the older lines are kept in a store of their own, and are sent as {@link LogLines}
+ * that go before the other lines as blocks of them are read, at most a few times a second.
+ * The stores take at most the memory set in the preferences, loading stops once one is full.
+ * Optionally it follows the file for lines appended later.
+ * Several files dropped together are read as one log, with their lines merged by time.
+ * Loading can be cancelled, after which the lines read so far are either kept or released.
+ * A load that fails is reported, and the lines read before the failure are kept.
  */
 public class FileLogDataProvider implements LogDataProvider {
 
+    private static final int DELIVERY_LINES = 2048;
+    private static final int OLDER_LINES_INTERVAL_MS = 500;
+
     private LogDataListener logListener;
-    private StringBuffer logData;
+    private LogStore logData;
+    private int deliveredLines;
+    private LogLines logLines;
+    private OlderLogLines olderLines;
+    private volatile boolean olderLinesPosted;
+    private int deliveredOlderLines;
+    private long olderLinesDeliveredAt;
     private Set<LogProcess> processes;
     private File file;
+    private List<File> files;
+    private String name;
     private Project project;
+    private LogFileFollower follower;
+    private boolean following;
+    private boolean canFollow;
+    private boolean canMergeByTime;
+    private boolean mergeByTime;
+    private boolean canReadTimeRange;
+    private LogTimeRange timeRange;
+    private boolean canReadNewestFirst;
+    private boolean newestFirst;
+    private long readLength = -1;
+    private volatile ProgressIndicator loadIndicator;
+    private boolean loading;
+    private boolean loadCancelled;
+    private volatile boolean loadDiscarded;
+    private boolean reloadPending;
 
     /**
-     * Initialize with given file
+     * Initialize with given files, which are shown as one log when there are several of them
+     *
+     * @param name Name of the files shown to the user
      */
-    FileLogDataProvider(Project project, File file) {
-        this.file = file;
+    FileLogDataProvider(Project project, List<File> files, String name) {
+        this.file = files.get(0);
+        this.files = files;
+        this.name = name;
         this.project = project;
+        this.mergeByTime = AndroidLogcatPreferences.getInstance(project).MERGE_ARCHIVE_LOGS_BY_TIME;
+        this.newestFirst = AndroidLogcatPreferences.getInstance(project).LOAD_FILES_NEWEST_FIRST;
     }
 
     @Override
     public void registerLogListener(LogDataListener logListener) {
         this.logListener = logListener;
         logListener.onCleared();
-        if (logData == null) {
-            loadLogs(file);
+        if (logData == null && logLines == null) {
+            loadLogs();
         } else {
             populateLogs();
         }
@@ -51,48 +105,466 @@ public class FileLogDataProvider implements LogDataProvider {
 
     @Override
     public void dispose() {
-        logData = null;
-        processes.clear();
-        processes = null;
+        clearLogs();
+    }
+
+    /**
+     * Stops following the file, and releases the data read from it.
+     * A load in progress is cancelled, and what it reads is released once it stops.
+     * Its stores are closed right away, the lines it adds to them until it stops are dropped.
+     */
+    private void clearLogs() {
+        ProgressIndicator indicator = loadIndicator;
+        if (loading) {
+            //the load may not have started yet, it checks for this as well
+            loadDiscarded = true;
+            if (indicator != null) {
+                indicator.cancel();
+            }
+        }
+        if (follower != null) {
+            follower.stop();
+            follower = null;
+        }
+        if (logData != null) {
+            //frees the memory of the messages right away, as it is not on the heap
+            logData.close();
+            logData = null;
+        }
+        if (olderLines != null) {
+            olderLines.close();
+            olderLines = null;
+        }
+        if (logLines instanceof Closeable) {
+            try {
+                ((Closeable) logLines).close();
+            } catch (Exception ignored) {
+            }
+        }
+        logLines = null;
+        if (processes != null) {
+            processes.clear();
+            processes = null;
+        }
     }
 
     /**
-     * Load logs from the given file
+     * Load logs from the files
      */
-    private void loadLogs(final File file) {
-        SingleTaskBackgroundExecutor.executeIfPossible(project, new SingleTaskBackgroundExecutor.BackgroundTask() {
+    private void loadLogs() {
+        if (loading) {
+            //load again once the discarded load stops
+            reloadPending = loadDiscarded;
+            return;
+        }
+        loading = true;
+        loadCancelled = false;
+        //the load adds to its own stores, clearLogs may close them and drop the fields meanwhile
+        final LogStore loadData = createLogStore();
+        final OlderLogLines loadOlderLines = new OlderLogLines(createLogStore());
+        logData = loadData;
+        olderLines = loadOlderLines;
+        deliveredLines = 0;
+        deliveredOlderLines = 0;
+        SingleTaskBackgroundExecutor.executeCancellable(project, new SingleTaskBackgroundExecutor.BackgroundTask() {
+            //what the load found, taken over on the UI thread once it completes
+            private LogFileReader fileReader;
+            private LogLines fileLines;
+            private boolean cancelled;
+            private Exception error;
+
             @Override
             public void run(ProgressIndicator progressIndicator) {
+                loadIndicator = progressIndicator;
                 try {
-                    UIUtil.invokeAndWaitIfNeeded((Runnable) () -> progressIndicator.setFraction(0.10));
-                    // start your process
-                    LogFileReader fileReader = LogFileReaderFactory.getFileReader(file);
-                    UIUtil.invokeAndWaitIfNeeded((Runnable) () -> progressIndicator.setFraction(0.15));
-                    logData = fileReader.getFileData(logListener);
-                    UIUtil.invokeAndWaitIfNeeded((Runnable) () -> progressIndicator.setFraction(0.70));
-                    processes = fileReader.getProcesses();
-                    UIUtil.invokeAndWaitIfNeeded((Runnable) () -> progressIndicator.setFraction(0.90));
-                } catch (Exception ignored) {
-                }
+                    fileReader = LogFileReaderFactory.getFileReader(files);
+                    fileReader.setMergeByTime(mergeByTime);
+                    fileReader.setTimeRange(timeRange);
+                    fileReader.setNewestFirst(newestFirst);
+                    LogFileReader.LogFileReaderListener readerListener = new LogFileReader.LogFileReaderListener() {
+                        @Override
+                        public void onLogData(String data) {
+                            loadData.addLines(data);
+                            UIUtil.invokeLaterIfNeeded(FileLogDataProvider.this::deliverLogData);
+                        }
+
+                        @Override
+                        public void onOlderLogData(String data) {
+                            loadOlderLines.addBlock(data);
+                            if (!olderLinesPosted) {
+                                olderLinesPosted = true;
+                                UIUtil.invokeLaterIfNeeded(FileLogDataProvider.this::deliverOlderLines);
+                            }
+                        }
+
+                        @Override
+                        public void onProgress(long bytesRead, long totalBytes) {
+                            if (totalBytes > 0) {
+                                progressIndicator.setFraction(Math.min(1.0, (double) bytesRead / totalBytes));
+                            }
+                        }
 
+                        @Override
+                        public List<LogFileSection> onSelectSections(List<LogFileSection> sections) {
+                            boolean[] selected = new boolean[1];
+                            UIUtil.invokeAndWaitIfNeeded(() ->
+                                    selected[0] = new LogFileSectionDialog(project, name, sections).selectSections());
+                            return selected[0] ? sections : Collections.emptyList();
+                        }
+
+                        @Override
+                        public boolean isCancelled() {
+                            return progressIndicator.isCanceled() || loadDiscarded || loadData.isFull() || loadOlderLines.isFull();
+                        }
+                    };
+                    fileLines = fileReader.getFileLines(readerListener);
+                    if (fileLines == null) {
+                        fileReader.readFileData(readerListener);
+                    }
+                } catch (CancellationException ex) {
+                    cancelled = true;
+                } catch (Exception ex) {
+                    error = ex;
+                }
             }
 
             @Override
             public String getTaskName() {
-                return "Loading " + file.getName();
+                return "Loading " + name;
+            }
+
+            @Override
+            public void onTaskIgnored() {
+                loading = false;
             }
 
             @Override
             public void onTaskComplete() {
-                populateLogs();
+                UIUtil.invokeLaterIfNeeded(() -> {
+                    loading = false;
+                    loadIndicator = null;
+                    logLines = fileLines;
+                    if (loadDiscarded) {
+                        loadDiscarded = false;
+                        //releases the lines of the discarded load as well
+                        clearLogs();
+                        if (reloadPending) {
+                            reloadPending = false;
+                            loadLogs();
+                        }
+                        return;
+                    }
+                    loadCancelled = cancelled;
+                    if (fileReader != null) {
+                        processes = fileReader.getProcesses();
+                        if (!cancelled && error == null) {
+                            canFollow = fileReader.canFollow() && (timeRange == null || !fileReader.canReadTimeRange());
+                            canReadTimeRange = fileReader.canReadTimeRange();
+                            canReadNewestFirst = fileReader.canReadNewestFirst();
+                            canMergeByTime = fileReader.canMergeByTime();
+                            readLength = fileReader.getReadLength();
+                        }
+                    }
+                    if (error != null) {
+                        Messages.showErrorDialog(project, "Loading " + name + " failed: "
+                                + (error.getMessage() != null ? error.getMessage() : error.toString())
+                                + (processes != null ? ". The lines read so far are shown." : ""), "Log Load Error");
+                    }
+                    if (loadCancelled && isFull()) {
+                        //stopped by the limit, not by the user
+                        loadCancelled = false;
+                        Messages.showWarningDialog(project, "Loading " + name + " stopped as its lines take the most memory set for a log, "
+                                        + AndroidLogcatPreferences.getInstance(project).MAX_LOG_MEMORY_MB + " MB. The lines read so far are shown.",
+                                "Log Memory Limit");
+                    }
+                    if (loadCancelled && !keepCancelledLoad()) {
+                        return;
+                    }
+                    if (logListener != null && processes != null) {
+                        logListener.onProcessList(new HashSet<>(processes));
+                        if (olderLines != null && olderLines.getLines().size() > 0) {
+                            //the blocks read since the last ones sent
+                            deliverOlderLines();
+                        } else if (logLines != null) {
+                            logListener.onLogLines(logLines);
+                        }
+                    }
+                    if (following) {
+                        startFollowing();
+                    }
+                });
             }
         });
     }
 
+    /**
+     * Asks whether to keep the lines read before the load was cancelled.
+     * If not, they are released right away, and the source is left empty.
+     *
+     * @return true if the lines are kept
+     */
+    private boolean keepCancelledLoad() {
+        int answer = Messages.showYesNoDialog(project, "Loading " + name + " was cancelled. Keep the lines read so far?",
+                "Loading Cancelled", "Keep", "Discard", Messages.getQuestionIcon());
+        if (answer == Messages.YES) {
+            return true;
+        }
+        clearLogs();
+        logData = createLogStore();
+        processes = new HashSet<>();
+        deliveredLines = 0;
+        if (logListener != null) {
+            logListener.onCleared();
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether a store of the lines is full, after which the lines read are dropped
+     */
+    private boolean isFull() {
+        LogStore data = logData;
+        OlderLogLines older = olderLines;
+        return (data != null && data.isFull()) || (older != null && older.isFull());
+    }
+
+    /**
+     * Returns the lines that go before the lines of the store, or null if there are none
+     */
+    private LogLines getLinesBefore() {
+        if (olderLines != null) {
+            LogLines lines = olderLines.getLines();
+            if (lines.size() > 0) {
+                return lines;
+            }
+        }
+        return logLines;
+    }
+
+    /**
+     * Sends the older lines read since the last ones sent to the listener, when the file is read newest first.
+     * While loading, this runs at most once in a while, and the blocks read meanwhile are sent together.
+     */
+    private void deliverOlderLines() {
+        if (olderLines == null || loadDiscarded) {
+            olderLinesPosted = false;
+            return;
+        }
+        long delay = olderLinesDeliveredAt + OLDER_LINES_INTERVAL_MS - System.currentTimeMillis();
+        if (loading && delay > 0) {
+            Timer timer = new Timer((int) delay, e -> deliverOlderLines());
+            timer.setRepeats(false);
+            timer.start();
+            return;
+        }
+        olderLinesPosted = false;
+        LogLines lines = olderLines.getLines();
+        if (logListener != null && lines.size() > deliveredOlderLines) {
+            int count = lines.size() - deliveredOlderLines;
+            deliveredOlderLines = lines.size();
+            olderLinesDeliveredAt = System.currentTimeMillis();
+            logListener.onOlderLogLines(lines, count);
+        }
+    }
+
+    /**
+     * Returns a new store for the lines, which takes at most the memory set in the preferences
+     */
+    private LogStore createLogStore() {
+        return new LogStore(AndroidLogcatPreferences.getInstance(project).MAX_LOG_MEMORY_MB * 1024L * 1024);
+    }
+
+    /**
+     * Sends all the data read so far to the listener
+     */
     private void populateLogs() {
-        if (logListener != null && logData != null) {
-            logListener.onProcessList(processes);
-            logListener.onLogData(logData.toString());
+        if (logListener != null && processes != null) {
+            logListener.onProcessList(new HashSet<>(processes));
+        }
+        LogLines linesBefore = getLinesBefore();
+        if (logListener != null && linesBefore != null) {
+            if (linesBefore != logLines) {
+                deliveredOlderLines = linesBefore.size();
+            }
+            logListener.onLogLines(linesBefore);
+        }
+        if (logData != null) {
+            deliveredLines = 0;
+            deliverLogData();
+        }
+    }
+
+    /**
+     * Returns whether the file can be followed for new lines. This is known only once the file is loaded.
+     */
+    public boolean canFollow() {
+        return canFollow;
+    }
+
+    /**
+     * Returns whether the file is followed for new lines
+     */
+    public boolean isFollowing() {
+        return following;
+    }
+
+    /**
+     * Starts or stops following the file for new lines
+     */
+    public void setFollowing(boolean following) {
+        this.following = following;
+        if (!following) {
+            if (follower != null) {
+                follower.stop();
+            }
+        } else if (readLength >= 0) {
+            startFollowing();
+        }
+    }
+
+    /**
+     * Returns whether the file holds several logs that can be merged by time. This is known only once the file is loaded.
+     */
+    public boolean canMergeByTime() {
+        return canMergeByTime;
+    }
+
+    /**
+     * Returns whether the logs in the file are merged by their timestamps
+     */
+    public boolean isMergeByTime() {
+        return mergeByTime;
+    }
+
+    /**
+     * Sets whether the logs in the file are merged by their timestamps, reloading the file if it was loaded
+     */
+    public void setMergeByTime(boolean mergeByTime) {
+        if (this.mergeByTime == mergeByTime) {
+            return;
+        }
+        this.mergeByTime = mergeByTime;
+        if (canMergeByTime) {
+            reloadLogs();
+        }
+    }
+
+    /**
+     * Returns whether only the lines within a time range can be loaded from the file. This is known only once the file is loaded.
+     */
+    public boolean canReadTimeRange() {
+        return canReadTimeRange;
+    }
+
+    /**
+     * Returns the time range of the lines loaded, or null if all of them are loaded
+     */
+    public LogTimeRange getTimeRange() {
+        return timeRange;
+    }
+
+    /**
+     * Sets the time range of the lines to load, or null to load all of them, reloading the file if it was loaded
+     */
+    public void setTimeRange(LogTimeRange timeRange) {
+        this.timeRange = timeRange;
+        if (canReadTimeRange) {
+            reloadLogs();
+        }
+    }
+
+    /**
+     * Returns whether the file can be loaded newest first. This is known only once the file is loaded.
+     */
+    public boolean canReadNewestFirst() {
+        return canReadNewestFirst;
+    }
+
+    /**
+     * Returns whether the last lines of the file are shown first, and the older lines are loaded after them
+     */
+    public boolean isNewestFirst() {
+        return newestFirst;
+    }
+
+    /**
+     * Sets whether the file is loaded newest first, reloading the file if it was loaded
+     */
+    public void setNewestFirst(boolean newestFirst) {
+        if (this.newestFirst == newestFirst) {
+            return;
+        }
+        this.newestFirst = newestFirst;
+        if (canReadNewestFirst && timeRange == null) {
+            reloadLogs();
+        }
+    }
+
+    /**
+     * Loads the file again if it was loaded
+     */
+    private void reloadLogs() {
+        if (logData != null || logLines != null) {
+            clearLogs();
+            readLength = -1;
+            if (logListener != null) {
+                logListener.onCleared();
+                loadLogs();
+            }
+        }
+    }
+
+    /**
+     * Starts following the file from where the loading stopped reading
+     */
+    private void startFollowing() {
+        if (canFollow && logData != null) {
+            if (follower == null) {
+                follower = new LogFileFollower(file, (log, process) ->
+                        UIUtil.invokeLaterIfNeeded(() -> onFollowedLine(log, process)));
+            }
+            if (!follower.isFollowing()) {
+                follower.start(Math.max(readLength, follower.getOffset()));
+            }
+        }
+    }
+
+    /**
+     * Called when a new line is appended to the followed file
+     */
+    private void onFollowedLine(String log, LogProcess process) {
+        LogStore data = logData;
+        if (data == null) {
+            return;
+        }
+        boolean delivered = deliveredLines == data.size();
+        data.add(log);
+        if (processes != null && processes.add(process) && logListener != null) {
+            logListener.onProcessList(new HashSet<>(processes));
+        }
+        if (logListener != null && delivered) {
+            deliveredLines = data.size();
+            logListener.onLogData(data, deliveredLines - 1, deliveredLines);
+        }
+    }
+
+    /**
+     * Sends the data that is not yet delivered to the listener.
+     * Large data is sent in multiple parts to keep the UI responsive.
+     */
+    private void deliverLogData() {
+        LogStore data = logData;
+        if (logListener != null && data != null) {
+            int size = data.size();
+            if (size > deliveredLines) {
+                int start = deliveredLines;
+                int end = Math.min(size, start + DELIVERY_LINES);
+                deliveredLines = end;
+                logListener.onLogData(data, start, end);
+                if (end < size) {
+                    SwingUtilities.invokeLater(this::deliverLogData);
+                }
+            }
         }
     }
 
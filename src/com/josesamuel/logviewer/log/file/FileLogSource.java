@@ -2,17 +2,18 @@ package com.josesamuel.logviewer.log.file;
 
 import com.android.ddmlib.IDevice;
 import com.intellij.openapi.project.Project;
-import com.josesamuel.logviewer.log.LogDataProvider;
 import com.josesamuel.logviewer.log.LogSource;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * A {@link LogSource} that provides data from a file
  */
 public class FileLogSource implements LogSource {
 
-    private File file;
+    private String name;
     private FileDevice device;
     private FileLogDataProvider fileLogDataProvider;
 
@@ -20,9 +21,16 @@ public class FileLogSource implements LogSource {
      * Initialize the {@link FileLogSource} with given file
      */
     public FileLogSource(Project project, File file) {
-        this.file = file;
-        this.device = new FileDevice(file);
-        this.fileLogDataProvider = new FileLogDataProvider(project, file);
+        this(project, Collections.singletonList(file));
+    }
+
+    /**
+     * Initialize the {@link FileLogSource} with given files, which are shown as one log
+     */
+    public FileLogSource(Project project, List<File> files) {
+        this.name = files.size() == 1 ? files.get(0).getName() : files.get(0).getName() + " +" + (files.size() - 1);
+        this.device = new FileDevice(files.get(0), name);
+        this.fileLogDataProvider = new FileLogDataProvider(project, files, name);
     }
 
     @Override
@@ -31,12 +39,12 @@ public class FileLogSource implements LogSource {
     }
 
     @Override
-    public LogDataProvider getLogProvider() {
+    public FileLogDataProvider getLogProvider() {
         return fileLogDataProvider;
     }
 
     @Override
     public String toString() {
-        return file.getName() + " " + super.toString();
+        return name + " " + super.toString();
     }
 }
@@ -0,0 +1,104 @@
+package com.josesamuel.logviewer.log.file;
+
+
+import com.josesamuel.logviewer.log.LogLines;
+import com.josesamuel.logviewer.log.LogStore;
+
+import java.io.Closeable;
+import java.util.Arrays;
+
+/**
+ * Lines before the first ones delivered, when a file is read newest first.
+ * They are read backwards in blocks, so each block goes before the ones added so far, and the lines within a block are in the order of the file.
+ * The blocks are kept in a {@link LogStore} in the order they are read, so they are within the memory limit of the store,
+ * and are shown through {@link #getLines() snapshots} that put them back in the order of the file.
+ */
+class OlderLogLines implements Closeable {
+
+    private final LogStore logStore;
+    //index in the store of the first line of each block, in the order the blocks were added
+    private int[] blockStarts = new int[64];
+    private int blockCount;
+
+    OlderLogLines(LogStore logStore) {
+        this.logStore = logStore;
+    }
+
+    /**
+     * Adds the lines of a block that goes before all the blocks added so far
+     */
+    synchronized void addBlock(String logData) {
+        int start = logStore.size();
+        logStore.addLines(logData);
+        if (logStore.size() > start) {
+            if (blockCount == blockStarts.length) {
+                blockStarts = Arrays.copyOf(blockStarts, blockCount * 2);
+            }
+            blockStarts[blockCount++] = start;
+        }
+    }
+
+    /**
+     * Returns the lines added so far in the order of the file. They do not change as more blocks are added.
+     */
+    synchronized LogLines getLines() {
+        return new Snapshot(logStore, Arrays.copyOf(blockStarts, blockCount), logStore.size());
+    }
+
+    /**
+     * Returns whether the store is full, after which the lines of further blocks are dropped
+     */
+    boolean isFull() {
+        return logStore.isFull();
+    }
+
+    @Override
+    public void close() {
+        logStore.close();
+    }
+
+    /**
+     * The blocks added until a point, from the last one added
+     */
+    private static final class Snapshot implements LogLines {
+
+        private final LogStore logStore;
+        private final int[] blockStarts;
+        //line of the snapshot that each block starts at, from the last block added
+        private final int[] firstLines;
+        private final int size;
+
+        private Snapshot(LogStore logStore, int[] blockStarts, int end) {
+            this.logStore = logStore;
+            this.blockStarts = blockStarts;
+            this.firstLines = new int[blockStarts.length];
+            int line = 0;
+            for (int i = blockStarts.length - 1; i >= 0; i--) {
+                firstLines[i] = line;
+                line += (i + 1 < blockStarts.length ? blockStarts[i + 1] : end) - blockStarts[i];
+            }
+            this.size = line;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public String getLine(int index) {
+            //the first lines go down as the blocks go up
+            int low = 0;
+            int high = blockStarts.length - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (firstLines[middle] <= index) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            return logStore.getLine(blockStarts[low] + index - firstLines[low]);
+        }
+    }
+}
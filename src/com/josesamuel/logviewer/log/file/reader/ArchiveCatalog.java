@@ -0,0 +1,93 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Catalog of the entries of an archive, listed from the central directory of a zip or the headers of a tar
+ * without decompressing the entries. The entries are offered through {@link LogFileReader.LogFileReaderListener#onSelectSections(List)}
+ * when there are several of them, and only the ones picked are read.
+ * All the entries are picked by default, except in a bugreport zip where only its main entry is.
+ */
+class ArchiveCatalog {
+
+    /**
+     * Entry of a bugreport zip holding the name of the main bugreport entry
+     */
+    static final String MAIN_ENTRY_NAME = "main_entry.txt";
+
+    private final List<LogFileSection> entries = new ArrayList<>();
+    private final Set<String> selectedNames = new HashSet<>();
+
+    /**
+     * Adds an entry, with its format guessed from its name
+     *
+     * @param offset Position of the data of the entry in the archive, or -1 if it is not known
+     * @param length Size of the entry when it is not compressed
+     */
+    void add(String name, long offset, long length) {
+        ArchiveFormat format = ArchiveFormat.detect(name);
+        entries.add(new LogFileSection(name, offset, length, true,
+                format == ArchiveFormat.PLAIN ? "log" : format.name().toLowerCase()));
+    }
+
+    /**
+     * Picks only the entry with the given name by default, if there is one
+     */
+    void selectOnly(String name) {
+        if (getEntry(name) == null) {
+            return;
+        }
+        for (LogFileSection entry : entries) {
+            entry.setSelected(entry.getName().equals(name));
+        }
+    }
+
+    /**
+     * Offers the entries to the listener if there are several, and keeps the ones that are picked
+     */
+    void select(LogFileReader.LogFileReaderListener listener) {
+        List<LogFileSection> picked = entries.size() > 1 ? listener.onSelectSections(entries) : entries;
+        selectedNames.clear();
+        for (LogFileSection entry : picked) {
+            if (entry.isSelected()) {
+                selectedNames.add(entry.getName());
+            }
+        }
+    }
+
+    /**
+     * Returns whether the entry with the given name is read
+     */
+    boolean isSelected(String name) {
+        return selectedNames.contains(name);
+    }
+
+    /**
+     * Returns the entries that are read, in the order of the archive
+     */
+    List<LogFileSection> getSelectedEntries() {
+        List<LogFileSection> selectedEntries = new ArrayList<>();
+        for (LogFileSection entry : entries) {
+            if (selectedNames.contains(entry.getName())) {
+                selectedEntries.add(entry);
+            }
+        }
+        return selectedEntries;
+    }
+
+    /**
+     * Returns the entry with the given name, or null
+     */
+    LogFileSection getEntry(String name) {
+        for (LogFileSection entry : entries) {
+            if (entry.getName().equals(name)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,93 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Format of a file, detected from its first bytes rather than its name
+ */
+enum ArchiveFormat {
+    ZIP,
+    GZIP,
+    TAR,
+    PLAIN;
+
+    /**
+     * Number of bytes needed to detect the format
+     */
+    static final int HEADER_SIZE = 512;
+
+    /**
+     * Detects the format from the given first bytes of the data
+     */
+    static ArchiveFormat detect(byte[] header, int length) {
+        if (length >= 4 && header[0] == 'P' && header[1] == 'K' && header[2] == 3 && header[3] == 4) {
+            return ZIP;
+        }
+        if (length >= 3 && (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b && header[2] == 8) {
+            return GZIP;
+        }
+        if (length >= 262 && header[257] == 'u' && header[258] == 's' && header[259] == 't'
+                && header[260] == 'a' && header[261] == 'r') {
+            return TAR;
+        }
+        return PLAIN;
+    }
+
+    /**
+     * Detects the format of the given file, returns {@link #PLAIN} if it can not be read
+     */
+    static ArchiveFormat detect(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] header = new byte[HEADER_SIZE];
+            return detect(header, readHeader(in, header));
+        } catch (IOException ex) {
+            return PLAIN;
+        }
+    }
+
+    /**
+     * Guesses the format from the name of a file, for the entries of an archive that are listed without reading them
+     */
+    static ArchiveFormat detect(String name) {
+        String lowerName = name.toLowerCase();
+        if (lowerName.endsWith(".zip")) {
+            return ZIP;
+        }
+        if (lowerName.endsWith(".gz") || lowerName.endsWith(".tgz")) {
+            return GZIP;
+        }
+        if (lowerName.endsWith(".tar")) {
+            return TAR;
+        }
+        return PLAIN;
+    }
+
+    /**
+     * Returns whether the given gzip file holds a tar archive
+     */
+    static boolean isCompressedTar(File file) {
+        try (InputStream in = new GZIPInputStream(new FileInputStream(file))) {
+            byte[] header = new byte[HEADER_SIZE];
+            return detect(header, readHeader(in, header)) == TAR;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads up to {@link #HEADER_SIZE} bytes, returns the number of bytes read
+     */
+    static int readHeader(InputStream in, byte[] header) throws IOException {
+        int length = 0;
+        int read;
+        while (length < header.length && (read = in.read(header, length, header.length - length)) != -1) {
+            length += read;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,293 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import com.josesamuel.logviewer.log.LogProcess;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Reader for binary logcat captures, as written by "logcat -B".
+ * The file is a sequence of logger_entry structs. Their headers are decoded directly from a {@link ByteBuffer},
+ * and the lines are written in the format of {@link com.josesamuel.logviewer.view.AndroidLogcatFormatter}
+ * without being parsed again.
+ */
+class BinaryLogFileReader extends LogFileReader {
+
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+    private static final int V1_HEADER_SIZE = 20;
+    private static final int MAX_HEADER_SIZE = 28;
+    private static final int MAX_PAYLOAD_SIZE = 5 * 1024;
+    private static final int ENTRIES_TO_DETECT = 3;
+    private static final int EVENTS_LOG_ID = 2;
+    private static final int MAX_LOG_ID = 7;
+    private static final String PRIORITIES = "??VDIWEA";
+
+    private final ZoneId zoneId = ZoneId.systemDefault();
+    private final StringBuilder line = new StringBuilder();
+    private long timeSecond = Long.MIN_VALUE;
+    private String timePrefix;
+
+
+    BinaryLogFileReader(File file) {
+        super(file);
+    }
+
+    /**
+     * Returns whether the given file starts with valid logger entries
+     */
+    static boolean isBinaryLog(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(ENTRIES_TO_DETECT * (MAX_HEADER_SIZE + MAX_PAYLOAD_SIZE))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining() && channel.read(buffer) > 0) ;
+            buffer.flip();
+            int entries = 0;
+            while (entries < ENTRIES_TO_DETECT && buffer.remaining() > 0) {
+                int entrySize = getEntrySize(buffer);
+                if (entrySize < 0 || entrySize > buffer.remaining()) {
+                    break;
+                }
+                int headerSize = getHeaderSize(buffer);
+                if (entrySize == headerSize) {
+                    return false;
+                }
+                int sec = buffer.getInt(buffer.position() + 12);
+                int nsec = buffer.getInt(buffer.position() + 16);
+                int priority = buffer.get(buffer.position() + headerSize);
+                if (sec < 0 || nsec < 0 || nsec >= 1000000000 || priority < 0 || priority > 8) {
+                    return false;
+                }
+                buffer.position(buffer.position() + entrySize);
+                entries++;
+            }
+            return entries > 0 && (entries == ENTRIES_TO_DETECT || buffer.remaining() == 0);
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean canFollow() {
+        return false;
+    }
+
+    @Override
+    public boolean canReadTimeRange() {
+        return false;
+    }
+
+    @Override
+    public void readFileData(LogFileReaderListener listener) throws Exception {
+        startBatches(listener);
+        long fileLength = getFile().length();
+        setReadLength(fileLength);
+        try (FileChannel channel = FileChannel.open(getFile().toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            long bytesRead = 0;
+            int read;
+            while ((read = channel.read(buffer)) > 0) {
+                bytesRead += read;
+                buffer.flip();
+                while (true) {
+                    int entrySize = getEntrySize(buffer);
+                    if (entrySize == 0 || entrySize > buffer.remaining()) {
+                        break;
+                    }
+                    if (entrySize < 0) {
+                        throw new IOException("Invalid logger entry at " + (bytesRead - buffer.remaining()));
+                    }
+                    readEntry(buffer);
+                    buffer.position(buffer.position() + entrySize);
+                }
+                buffer.compact();
+                updateProgress(bytesRead, fileLength);
+            }
+        }
+        flushBatch();
+    }
+
+    /**
+     * Returns the size of the entry at the position of the buffer, 0 if the header is not in the buffer,
+     * or -1 if it is not a valid entry
+     */
+    private static int getEntrySize(ByteBuffer buffer) {
+        if (buffer.remaining() < V1_HEADER_SIZE) {
+            return 0;
+        }
+        int headerSize = getHeaderSize(buffer);
+        int payloadSize = buffer.getShort(buffer.position()) & 0xffff;
+        if (headerSize < V1_HEADER_SIZE || headerSize > MAX_HEADER_SIZE || payloadSize > MAX_PAYLOAD_SIZE) {
+            return -1;
+        }
+        return headerSize + payloadSize;
+    }
+
+    /**
+     * Returns the size of the header of the entry at the position of the buffer.
+     * The first version had padding in place of the header size.
+     */
+    private static int getHeaderSize(ByteBuffer buffer) {
+        int headerSize = buffer.getShort(buffer.position() + 2) & 0xffff;
+        return headerSize == 0 ? V1_HEADER_SIZE : headerSize;
+    }
+
+    /**
+     * Adds the lines of the entry at the position of the buffer. An entry without a payload has no lines.
+     */
+    private void readEntry(ByteBuffer buffer) {
+        int start = buffer.position();
+        int payloadSize = buffer.getShort(start) & 0xffff;
+        if (payloadSize == 0) {
+            //the payload may end at the limit of the buffer, with nothing to read
+            return;
+        }
+        int headerSize = getHeaderSize(buffer);
+        int pid = buffer.getInt(start + 4);
+        int tid = buffer.getInt(start + 8);
+        int sec = buffer.getInt(start + 12);
+        int nsec = buffer.getInt(start + 16);
+        //the field after the time is the euid in v2, and the log id from v3 on
+        int logId = headerSize >= 24 ? buffer.getInt(start + 20) : 0;
+        if (headerSize == 24 && (logId < 0 || logId > MAX_LOG_ID)) {
+            logId = 0;
+        }
+        int payload = start + headerSize;
+        int payloadEnd = payload + payloadSize;
+
+        char priority;
+        String tag;
+        String message;
+        if (logId == EVENTS_LOG_ID) {
+            priority = 'I';
+            tag = payloadSize >= 4 ? Integer.toString(buffer.getInt(payload)) : "event";
+            StringBuilder event = new StringBuilder();
+            if (payloadSize > 4) {
+                appendEventValue(buffer, payload + 4, payloadEnd, event);
+            }
+            message = event.toString();
+        } else {
+            int p = buffer.get(payload);
+            priority = PRIORITIES.charAt(p >= 0 && p < PRIORITIES.length() ? p : 0);
+            if (priority == '?') {
+                priority = 'V';
+            }
+            int tagEnd = indexOf(buffer, payload + 1, payloadEnd);
+            tag = decode(buffer, payload + 1, tagEnd).replace(' ', '_');
+            int messageEnd = indexOf(buffer, Math.min(tagEnd + 1, payloadEnd), payloadEnd);
+            message = decode(buffer, Math.min(tagEnd + 1, payloadEnd), messageEnd);
+        }
+        if (tag.isEmpty()) {
+            tag = "TAG";
+        }
+
+        LogProcess logProcess = new LogProcess().setProcessID(pid).setProcessName(tag);
+        String time = getTimePrefix(sec);
+        int millis = nsec / 1000000;
+        int lineStart = 0;
+        int length = message.length();
+        do {
+            int lineEnd = message.indexOf('\n', lineStart);
+            if (lineEnd == -1) {
+                lineEnd = length;
+            }
+            line.setLength(0);
+            line.append(time).append('.');
+            if (millis < 100) {
+                line.append(millis < 10 ? "00" : "0");
+            }
+            line.append(millis).append(' ').append(pid).append('-').append(tid).append("/? ")
+                    .append(priority).append('/').append(tag).append(": ").append(message, lineStart, lineEnd);
+            addLine(line.toString(), logProcess);
+            lineStart = lineEnd + 1;
+        } while (lineStart < length);
+    }
+
+    /**
+     * Returns the date and time up to the seconds, as "MM-dd HH:mm:ss". The last one is reused as entries
+     * mostly arrive in order.
+     */
+    private String getTimePrefix(long second) {
+        if (second != timeSecond) {
+            LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochSecond(second), zoneId);
+            timePrefix = String.format("%02d-%02d %02d:%02d:%02d", time.getMonthValue(), time.getDayOfMonth(),
+                    time.getHour(), time.getMinute(), time.getSecond());
+            timeSecond = second;
+        }
+        return timePrefix;
+    }
+
+    /**
+     * Appends the value of a binary event at the given position, returns the position after it
+     */
+    private static int appendEventValue(ByteBuffer buffer, int position, int end, StringBuilder event) {
+        if (position >= end) {
+            return end;
+        }
+        int type = buffer.get(position++);
+        switch (type) {
+            case 0:
+                if (position + 4 <= end) {
+                    event.append(buffer.getInt(position));
+                }
+                return position + 4;
+            case 1:
+                if (position + 8 <= end) {
+                    event.append(buffer.getLong(position));
+                }
+                return position + 8;
+            case 2:
+                if (position + 4 <= end) {
+                    int length = Math.min(buffer.getInt(position), end - position - 4);
+                    event.append(decode(buffer, position + 4, position + 4 + Math.max(length, 0)));
+                    return position + 4 + Math.max(length, 0);
+                }
+                return end;
+            case 3:
+                int count = position < end ? buffer.get(position++) & 0xff : 0;
+                event.append('[');
+                for (int i = 0; i < count && position < end; i++) {
+                    if (i > 0) {
+                        event.append(',');
+                    }
+                    position = appendEventValue(buffer, position, end, event);
+                }
+                event.append(']');
+                return position;
+            case 4:
+                if (position + 4 <= end) {
+                    event.append(buffer.getFloat(position));
+                }
+                return position + 4;
+            default:
+                return end;
+        }
+    }
+
+    /**
+     * Returns the position of the first NUL byte in the range, or the end of the range
+     */
+    private static int indexOf(ByteBuffer buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == 0) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static String decode(ByteBuffer buffer, int start, int end) {
+        if (end <= start) {
+            return "";
+        }
+        return new String(buffer.array(), buffer.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+    }
+}
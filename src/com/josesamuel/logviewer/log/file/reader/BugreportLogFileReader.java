@@ -0,0 +1,166 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reader for Android bugreport text files.
+ * The file is scanned once for its section headers, like "------ SYSTEM LOG (logcat -v threadtime -d *:v) ------",
+ * and only the sections picked through {@link LogFileReaderListener#onSelectSections(List)} are parsed.
+ * The log sections are picked by default, the rest of the dumpsys output is skipped.
+ */
+class BugreportLogFileReader extends LogFileReader {
+
+    private static final String BUGREPORT_HEADER = "== dumpstate";
+    private static final String SECTION_PREFIX = "------ ";
+    private static final String SECTION_SUFFIX = " ------";
+    private static final String DURATION_MARKER = " was the duration of ";
+    private static final int SCAN_BUFFER_SIZE = 1024 * 1024;
+    private static final int MAX_HEADER_LENGTH = 1024;
+
+    private final List<LogFileSection> sections = new ArrayList<>();
+    private String sectionName;
+    private long sectionStart;
+
+
+    BugreportLogFileReader(File file) {
+        super(file);
+    }
+
+    /**
+     * Returns whether the given file is a bugreport, from its first bytes
+     */
+    static boolean isBugreport(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] header = new byte[ArchiveFormat.HEADER_SIZE];
+            int length = ArchiveFormat.readHeader(in, header);
+            return new String(header, 0, length, StandardCharsets.ISO_8859_1).contains(BUGREPORT_HEADER);
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean canFollow() {
+        return false;
+    }
+
+    @Override
+    public boolean canReadTimeRange() {
+        return false;
+    }
+
+    @Override
+    public void readFileData(LogFileReaderListener listener) throws Exception {
+        startBatches(listener);
+        List<LogFileSection> selectedSections = new ArrayList<>();
+        for (LogFileSection section : listener.onSelectSections(scanSections())) {
+            if (section.isSelected()) {
+                selectedSections.add(section);
+            }
+        }
+        long totalLength = 0;
+        for (LogFileSection section : selectedSections) {
+            totalLength += section.getLength();
+        }
+        long progressTotal = totalLength;
+        setReadLength(getFile().length());
+        try (FileChannel channel = FileChannel.open(getFile().toPath(), StandardOpenOption.READ)) {
+            new ParallelLineParser(this).parse(parser -> {
+                long progressOffset = 0;
+                for (LogFileSection section : selectedSections) {
+                    InputStream in = new FileSliceInputStream(channel, section.getOffset(), section.getLength());
+                    parser.submitStream(section.getName(), new ProgressInputStream(in, section.getLength(),
+                            progressOffset, progressTotal, listener));
+                    progressOffset += section.getLength();
+                }
+            });
+        }
+        flushBatch();
+    }
+
+    /**
+     * Scans the file for the section headers, and returns the sections in the order they appear
+     */
+    private List<LogFileSection> scanSections() throws IOException {
+        sections.clear();
+        sectionName = null;
+        byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+        StringBuilder header = null;
+        long headerStart = 0;
+        boolean lineStart = true;
+        long offset = 0;
+        long fileLength = getFile().length();
+        try (InputStream in = new FileInputStream(getFile())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    if (header != null) {
+                        if (b == '\n') {
+                            onHeaderLine(header.toString().trim(), headerStart, offset + i + 1);
+                            header = null;
+                        } else if (header.length() < MAX_HEADER_LENGTH) {
+                            header.append((char) (b & 0xff));
+                        }
+                    } else if (lineStart && b == '-') {
+                        header = new StringBuilder().append('-');
+                        headerStart = offset + i;
+                    }
+                    lineStart = b == '\n';
+                }
+                offset += read;
+                updateProgress(offset, fileLength);
+            }
+        }
+        endSection(offset);
+        return sections;
+    }
+
+    /**
+     * Starts or ends a section at the given line that starts with '-'
+     *
+     * @param lineStart Position where the line starts
+     * @param lineEnd   Position where the next line starts
+     */
+    private void onHeaderLine(String line, long lineStart, long lineEnd) {
+        if (!line.startsWith(SECTION_PREFIX)) {
+            return;
+        }
+        endSection(lineStart);
+        if (!line.contains(DURATION_MARKER)) {
+            String name = line.substring(SECTION_PREFIX.length());
+            if (name.endsWith(SECTION_SUFFIX)) {
+                name = name.substring(0, name.length() - SECTION_SUFFIX.length());
+            }
+            int commandStart = name.indexOf(" (");
+            if (commandStart > 0) {
+                name = name.substring(0, commandStart);
+            }
+            sectionName = name.trim();
+            sectionStart = lineEnd;
+        }
+    }
+
+    private void endSection(long end) {
+        if (sectionName != null && end > sectionStart) {
+            sections.add(new LogFileSection(sectionName, sectionStart, end - sectionStart, isLogSection(sectionName)));
+        }
+        sectionName = null;
+    }
+
+    /**
+     * Returns whether the section with the given name holds logcat output
+     */
+    private static boolean isLogSection(String name) {
+        return (name.endsWith(" LOG") || name.contains("LOGCAT")) && !name.startsWith("KERNEL");
+    }
+}
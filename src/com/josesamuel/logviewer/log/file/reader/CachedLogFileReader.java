@@ -0,0 +1,154 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import com.josesamuel.logviewer.log.LogLines;
+import com.josesamuel.logviewer.log.LogProcess;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reader that serves a file from its {@link ParseCache} when it was read before, and fills the cache otherwise.
+ * The file is read by the given reader the first time, and is opened from the cache without parsing after that.
+ */
+class CachedLogFileReader extends LogFileReader {
+
+    /**
+     * Files smaller than this are fast enough to read, and are not cached
+     */
+    static final long MIN_FILE_SIZE = 16 * 1024 * 1024;
+
+    private final LogFileReader reader;
+
+    CachedLogFileReader(LogFileReader reader) {
+        super(reader.getFile());
+        this.reader = reader;
+    }
+
+    @Override
+    public LogLines getFileLines(LogFileReaderListener listener) throws Exception {
+        if (reader.getTimeRange() != null) {
+            return reader.getFileLines(listener);
+        }
+        ParseCache parseCache = getParseCache();
+        LogLines logLines = parseCache.load(reader.getProcesses(), reader);
+        if (logLines != null) {
+            listener.onProgress(1, 1);
+            return logLines;
+        }
+        logLines = reader.getFileLines(listener);
+        if (logLines instanceof MappedLogLines) {
+            parseCache.saveIndex(((MappedLogLines) logLines).getLineOffsets(), reader.getProcesses(), reader.getReadLength());
+        }
+        return logLines;
+    }
+
+    @Override
+    public void readFileData(LogFileReaderListener listener) throws Exception {
+        ParseCache.Writer cacheWriter;
+        if (reader.getTimeRange() != null || reader.isNewestFirst()) {
+            //the cache holds the whole file in order
+            reader.readFileData(listener);
+            return;
+        }
+        try {
+            cacheWriter = getParseCache().startWriting();
+        } catch (IOException ex) {
+            reader.readFileData(listener);
+            return;
+        }
+        try (ParseCache.Writer writer = cacheWriter) {
+            boolean[] sectionsSelected = new boolean[1];
+            IOException[] writeError = new IOException[1];
+            reader.readFileData(new LogFileReaderListener() {
+                @Override
+                public void onLogData(String logData) {
+                    if (writeError[0] == null) {
+                        try {
+                            writer.write(logData);
+                        } catch (IOException ex) {
+                            writeError[0] = ex;
+                        }
+                    }
+                    listener.onLogData(logData);
+                }
+
+                @Override
+                public void onProgress(long bytesRead, long totalBytes) {
+                    listener.onProgress(bytesRead, totalBytes);
+                }
+
+                @Override
+                public List<LogFileSection> onSelectSections(List<LogFileSection> sections) {
+                    //the lines depend on the sections picked this time, unless all of them are read
+                    List<LogFileSection> selectedSections = listener.onSelectSections(sections);
+                    if (selectedSections.size() != sections.size()) {
+                        sectionsSelected[0] = true;
+                    }
+                    for (LogFileSection section : selectedSections) {
+                        if (!section.isSelected()) {
+                            sectionsSelected[0] = true;
+                        }
+                    }
+                    return selectedSections;
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return listener.isCancelled();
+                }
+            });
+            if (writeError[0] == null && !sectionsSelected[0]) {
+                try {
+                    writer.commit(reader.getProcesses(), reader.getReadLength());
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean canMergeByTime() {
+        return reader.canMergeByTime();
+    }
+
+    @Override
+    public void setMergeByTime(boolean mergeByTime) {
+        reader.setMergeByTime(mergeByTime);
+    }
+
+    @Override
+    public boolean canReadTimeRange() {
+        return reader.canReadTimeRange();
+    }
+
+    @Override
+    public void setTimeRange(LogTimeRange timeRange) {
+        reader.setTimeRange(timeRange);
+    }
+
+    @Override
+    public void setNewestFirst(boolean newestFirst) {
+        reader.setNewestFirst(newestFirst);
+    }
+
+    @Override
+    public Set<LogProcess> getProcesses() {
+        return reader.getProcesses();
+    }
+
+    @Override
+    public long getReadLength() {
+        return reader.getReadLength();
+    }
+
+    @Override
+    public boolean canFollow() {
+        return reader.canFollow();
+    }
+
+    private ParseCache getParseCache() {
+        return new ParseCache(getFile(), reader.isMergeByTime());
+    }
+}
@@ -0,0 +1,473 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import com.josesamuel.logviewer.util.CacheDirectory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Random access index of a gzip file, like zlib's zran.
+ * At every checkpoint the position of a deflate block is saved, along with the last 32K of the data before it,
+ * so that the file can be decompressed from there instead of from the start.
+ * The index is kept in the cache directory, and is used as long as the file is not modified.
+ * The least recently used indexes are deleted once they take too much space.
+ */
+class GzipIndex {
+
+    static final int WINDOW_SIZE = 32 * 1024;
+
+    private static final String CACHE_KIND = "gzip-index";
+    private static final long MAX_CACHE_SIZE = 512L * 1024 * 1024;
+    private static final int MAGIC = 0x4C56475A;
+    private static final int VERSION = 1;
+    private static final long SPAN = 4 * 1024 * 1024;
+    private static final int READ_SIZE = 64 * 1024;
+    //order of the code length codes in a dynamic block header, up to the code length 1
+    private static final int[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1};
+    private static final Set<File> filesBeingIndexed = Collections.synchronizedSet(new HashSet<>());
+
+    private final long fileLength;
+    private final long lastModified;
+    private final long uncompressedLength;
+    private final List<Checkpoint> checkpoints;
+
+    GzipIndex(long fileLength, long lastModified, long uncompressedLength, List<Checkpoint> checkpoints) {
+        this.fileLength = fileLength;
+        this.lastModified = lastModified;
+        this.uncompressedLength = uncompressedLength;
+        this.checkpoints = checkpoints;
+    }
+
+    /**
+     * Returns the saved index of the given file, or null if it is not indexed yet or was modified since
+     */
+    static GzipIndex load(File file) {
+        File indexFile = getIndexFile(file);
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long fileLength = in.readLong();
+            long lastModified = in.readLong();
+            if (fileLength != file.length() || lastModified != file.lastModified()) {
+                return null;
+            }
+            long uncompressedLength = in.readLong();
+            int count = in.readInt();
+            List<Checkpoint> checkpoints = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long bitOffset = in.readLong();
+                long offset = in.readLong();
+                byte[] window = new byte[in.readInt()];
+                in.readFully(window);
+                checkpoints.add(new Checkpoint(bitOffset, offset, window));
+            }
+            CacheDirectory.touch(indexFile);
+            return new GzipIndex(fileLength, lastModified, uncompressedLength, checkpoints);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the index of the given file, building and saving it first if it is not indexed yet
+     */
+    static GzipIndex build(File file) throws IOException {
+        GzipIndex index = load(file);
+        if (index == null) {
+            index = new GzipIndexBuilder(file, SPAN).build();
+            index.save(getIndexFile(file));
+        }
+        return index;
+    }
+
+    /**
+     * Builds and saves the index of the given file while it is read from the given stream,
+     * handing the decompressed data to the given output
+     */
+    static GzipIndex build(File file, InputStream in, OutputStream out) throws IOException {
+        GzipIndex index = new GzipIndexBuilder(file, SPAN).build(in, out);
+        index.save(getIndexFile(file));
+        return index;
+    }
+
+    /**
+     * Builds the index of the given file on a background thread, unless it is already indexed
+     */
+    static void buildInBackground(File file) {
+        if (load(file) != null || !filesBeingIndexed.add(file)) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                build(file);
+            } catch (IOException ignored) {
+            } finally {
+                filesBeingIndexed.remove(file);
+            }
+        }, "LogViewer gzip index " + file.getName());
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Saves the index to the given file
+     */
+    void save(File indexFile) throws IOException {
+        File tempFile = new File(indexFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fileLength);
+            out.writeLong(lastModified);
+            out.writeLong(uncompressedLength);
+            out.writeInt(checkpoints.size());
+            for (Checkpoint checkpoint : checkpoints) {
+                out.writeLong(checkpoint.bitOffset);
+                out.writeLong(checkpoint.offset);
+                out.writeInt(checkpoint.window.length);
+                out.write(checkpoint.window);
+            }
+        }
+        if (!tempFile.renameTo(indexFile)) {
+            indexFile.delete();
+            if (!tempFile.renameTo(indexFile)) {
+                tempFile.delete();
+                return;
+            }
+        }
+        CacheDirectory.trim(CACHE_KIND, MAX_CACHE_SIZE);
+    }
+
+    /**
+     * Returns the length of the decompressed data
+     */
+    long getUncompressedLength() {
+        return uncompressedLength;
+    }
+
+    /**
+     * Returns the number of checkpoints. The data between two checkpoints is a span that is decompressed at once.
+     */
+    int getSpanCount() {
+        return checkpoints.size();
+    }
+
+    /**
+     * Returns the index of the span that has the given offset of the decompressed data
+     */
+    int getSpan(long offset) {
+        int low = 0;
+        int high = checkpoints.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (checkpoints.get(middle).offset <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the offset of the decompressed data where the given span starts
+     */
+    long getSpanStart(int span) {
+        return span < checkpoints.size() ? checkpoints.get(span).offset : uncompressedLength;
+    }
+
+    /**
+     * Returns the offset of the compressed data where the given span starts
+     */
+    long getCompressedSpanStart(int span) {
+        return span < checkpoints.size() ? checkpoints.get(span).bitOffset / 8 : fileLength;
+    }
+
+    /**
+     * Decompresses the given span. Can be called from several threads at the same time.
+     */
+    byte[] inflateSpan(FileChannel channel, int span) throws IOException {
+        byte[] data = new byte[(int) (getSpanStart(span + 1) - getSpanStart(span))];
+        try (SpanInputStream in = new SpanInputStream(channel, span)) {
+            int inflated = 0;
+            while (inflated < data.length) {
+                inflated += in.read(data, inflated, data.length - inflated);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Opens the decompressed data from the given offset. Only one span is decompressed at a time, as it is read,
+     * so that many of these streams can be open at once.
+     */
+    InputStream openStream(FileChannel channel, long offset) throws IOException {
+        int firstSpan = getSpan(offset);
+        InputStream in = new SequenceInputStream(new Enumeration<InputStream>() {
+            private int nextSpan = firstSpan;
+
+            @Override
+            public boolean hasMoreElements() {
+                return nextSpan < checkpoints.size();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                return new SpanInputStream(channel, nextSpan++);
+            }
+        });
+        long toSkip = offset - getSpanStart(firstSpan);
+        while (toSkip > 0) {
+            long skipped = in.skip(toSkip);
+            if (skipped <= 0) {
+                throw new EOFException("Offset past the end of the gzip file");
+            }
+            toSkip -= skipped;
+        }
+        return in;
+    }
+
+    private static File getIndexFile(File file) {
+        return CacheDirectory.getFile(CACHE_KIND, file, ".gzidx");
+    }
+
+    /**
+     * Returns empty deflate blocks that take the given number of bits modulo 8, followed by the given byte
+     * without its low bits. This is what zlib's inflatePrime does for an {@link Inflater}, which can not be given bits:
+     * a block that starts in the middle of a byte is inflated after the empty blocks, and the bytes after it stay where they are,
+     * so that the stored blocks that are aligned to them are read right.
+     * An empty fixed block takes 10 bits, and the empty dynamic block takes 95, so together they make up any number of bits.
+     *
+     * @param firstByte Byte of the file the block starts in
+     * @param shift     Bits of the byte before the block, from 1 to 7
+     */
+    static byte[] createPrimer(int firstByte, int shift) {
+        BitWriter writer = new BitWriter();
+        int fixedBlocks = shift;
+        if ((shift & 1) != 0) {
+            writeEmptyDynamicBlock(writer);
+            fixedBlocks -= 7;
+        }
+        //each fixed block adds 2 bits modulo 8
+        fixedBlocks = ((fixedBlocks + 8) & 7) / 2;
+        for (int i = 0; i < fixedBlocks; i++) {
+            //not last, fixed codes, and the end of block code of 7 zero bits
+            writer.write(0, 1);
+            writer.write(1, 2);
+            writer.write(0, 7);
+        }
+        return writer.finish(firstByte & (0xff << shift));
+    }
+
+    /**
+     * Writes a dynamic block whose only literal code is the end of block, with a code of 1 bit, and no distance codes.
+     * It takes 95 bits.
+     */
+    private static void writeEmptyDynamicBlock(BitWriter writer) {
+        //not last, dynamic codes, 257 literal codes, 3 distance codes, 18 code length codes
+        writer.write(0, 1);
+        writer.write(2, 2);
+        writer.write(0, 5);
+        writer.write(2, 5);
+        writer.write(CODE_LENGTH_ORDER.length - 4, 4);
+        //the code lengths are coded with 18 as 0, 1 as 10 and 17 as 11
+        for (int symbol : CODE_LENGTH_ORDER) {
+            writer.write(symbol == 18 ? 1 : symbol == 17 || symbol == 1 ? 2 : 0, 3);
+        }
+        //256 zero lengths as 138 and 118 zeros
+        writer.writeCode(0, 1);
+        writer.write(138 - 11, 7);
+        writer.writeCode(0, 1);
+        writer.write(118 - 11, 7);
+        //a length of 1 for the end of block code, then the 3 zero distance code lengths
+        writer.writeCode(2, 2);
+        writer.writeCode(3, 2);
+        writer.write(0, 3);
+        //end of block
+        writer.writeCode(0, 1);
+    }
+
+    /**
+     * Stream of the decompressed data of one span, which is inflated as it is read
+     */
+    private final class SpanInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final Checkpoint checkpoint;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_SIZE);
+        private Inflater inflater;
+        private long position;
+        private long remaining;
+
+        private SpanInputStream(FileChannel channel, int span) {
+            this.channel = channel;
+            this.checkpoint = checkpoints.get(span);
+            this.position = checkpoint.bitOffset >>> 3;
+            this.remaining = getSpanStart(span + 1) - checkpoint.offset;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining == 0) {
+                close();
+                return -1;
+            }
+            if (inflater == null) {
+                inflater = new Inflater(true);
+                if (checkpoint.window.length > 0) {
+                    inflater.setDictionary(checkpoint.window);
+                }
+                int shift = (int) (checkpoint.bitOffset & 7);
+                if (shift != 0) {
+                    //the block starts in the middle of a byte, the bits of the byte before it are replaced by empty blocks
+                    inflater.setInput(createPrimer(readByte(position), shift));
+                    position++;
+                }
+            }
+            try {
+                while (true) {
+                    if (inflater.needsInput()) {
+                        fillInput();
+                    }
+                    int count = inflater.inflate(b, off, (int) Math.min(len, remaining));
+                    if (count > 0) {
+                        remaining -= count;
+                        return count;
+                    }
+                    if (inflater.finished() || inflater.needsDictionary()) {
+                        throw new EOFException("Unexpected end of gzip member");
+                    }
+                }
+            } catch (DataFormatException ex) {
+                throw new IOException(ex);
+            }
+        }
+
+        /**
+         * Reads the next part of the compressed data in to the inflater
+         */
+        private void fillInput() throws IOException {
+            readBuffer.clear();
+            int read = 0;
+            int count;
+            while (readBuffer.hasRemaining() && (count = channel.read(readBuffer, position + read)) > 0) {
+                read += count;
+            }
+            if (read == 0) {
+                throw new EOFException("Unexpected end of gzip file");
+            }
+            position += read;
+            inflater.setInput(readBuffer.array(), 0, read);
+        }
+
+        private int readByte(long position) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+            if (channel.read(buffer, position) != 1) {
+                throw new EOFException("Unexpected end of gzip file");
+            }
+            return buffer.get(0) & 0xff;
+        }
+
+        @Override
+        public void close() {
+            if (inflater != null) {
+                inflater.end();
+                inflater = null;
+            }
+        }
+    }
+
+    /**
+     * Writes bits in the order of a deflate stream, from the lowest bit of each byte
+     */
+    private static final class BitWriter {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private int bitBuffer;
+        private int bitCount;
+
+        /**
+         * Writes the given number of bits of the value, from its lowest bit
+         */
+        private void write(int value, int count) {
+            bitBuffer |= value << bitCount;
+            bitCount += count;
+            while (bitCount >= 8) {
+                out.write(bitBuffer);
+                bitBuffer >>>= 8;
+                bitCount -= 8;
+            }
+        }
+
+        /**
+         * Writes a huffman code, which is written from its highest bit
+         */
+        private void writeCode(int code, int length) {
+            write(Integer.reverse(code) >>> (32 - length), length);
+        }
+
+        /**
+         * Returns the bits written, with the last bits of the last byte taken from the given byte
+         */
+        private byte[] finish(int lastBits) {
+            out.write(bitBuffer | lastBits);
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Position of a deflate block in the file, and the data before it
+     */
+    static final class Checkpoint {
+        private final long bitOffset;
+        private final long offset;
+        private final byte[] window;
+
+        /**
+         * @param bitOffset Position of the block in the file, in bits
+         * @param offset    Position of the block in the decompressed data
+         * @param window    Up to 32K of the decompressed data before the block
+         */
+        Checkpoint(long bitOffset, long offset, byte[] window) {
+            this.bitOffset = bitOffset;
+            this.offset = offset;
+            this.window = window;
+        }
+    }
+}
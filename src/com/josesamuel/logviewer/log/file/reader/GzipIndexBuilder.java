@@ -0,0 +1,404 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+/**
+ * Builds a {@link GzipIndex} by decompressing the file once.
+ * {@link java.util.zip.Inflater} does not report where the deflate blocks start, so this decodes the deflate
+ * stream itself. The output is not kept, only the last 32K of it, which is saved at the checkpoints.
+ * The output can be handed on as it is decompressed, so that the file is read for its data and indexed at once.
+ */
+class GzipIndexBuilder {
+
+    private static final int MAX_BITS = 15;
+    private static final int WINDOW_MASK = GzipIndex.WINDOW_SIZE - 1;
+    //the output is handed on in parts, well before the window wraps over it
+    private static final int OUTPUT_SIZE = GzipIndex.WINDOW_SIZE / 2;
+
+    private static final int[] LENGTH_BASE = {3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+            35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+    private static final int[] LENGTH_EXTRA = {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+            3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+    private static final int[] DISTANCE_BASE = {1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+            257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+    private static final int[] DISTANCE_EXTRA = {0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+            7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+    private static final int[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+    private static final HuffmanTable FIXED_LITERALS;
+    private static final HuffmanTable FIXED_DISTANCES;
+
+    static {
+        int[] lengths = new int[288];
+        Arrays.fill(lengths, 0, 144, 8);
+        Arrays.fill(lengths, 144, 256, 9);
+        Arrays.fill(lengths, 256, 280, 7);
+        Arrays.fill(lengths, 280, 288, 8);
+        FIXED_LITERALS = new HuffmanTable(lengths, 288);
+        Arrays.fill(lengths, 0, 30, 5);
+        FIXED_DISTANCES = new HuffmanTable(lengths, 30);
+    }
+
+    private final File file;
+    private final long span;
+    private final List<GzipIndex.Checkpoint> checkpoints = new ArrayList<>();
+    private final byte[] window = new byte[GzipIndex.WINDOW_SIZE];
+    private final byte[] buffer = new byte[64 * 1024];
+    private int bufferPosition;
+    private int bufferLimit;
+    private InputStream in;
+    private OutputStream out;
+    private long outputWritten;
+    private long fileLength;
+    private long bytesRead;
+    private long bitBuffer;
+    private int bitCount;
+    private long output;
+    private long memberOutput;
+    private long lastCheckpoint;
+
+    /**
+     * Initialize with the file to index, and the number of uncompressed bytes between the checkpoints
+     */
+    GzipIndexBuilder(File file, long span) {
+        this.file = file;
+        this.span = span;
+    }
+
+    /**
+     * Decompresses the file, and returns the index of it
+     */
+    GzipIndex build() throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            return build(input, null);
+        }
+    }
+
+    /**
+     * Decompresses the file from the given stream of it, and returns the index of it
+     *
+     * @param input Data of the file, from its start
+     * @param out   Receives the decompressed data, or null
+     */
+    GzipIndex build(InputStream input, OutputStream out) throws IOException {
+        long lastModified = file.lastModified();
+        fileLength = file.length();
+        this.in = input;
+        this.out = out;
+        try {
+            int members = 0;
+            while (readMemberHeader(members == 0)) {
+                members++;
+                memberOutput = output;
+                addCheckpoint();
+                boolean lastBlock;
+                do {
+                    if (output - lastCheckpoint >= span) {
+                        addCheckpoint();
+                    }
+                    lastBlock = bits(1) == 1;
+                    int type = bits(2);
+                    if (type == 0) {
+                        storedBlock();
+                    } else if (type == 1) {
+                        codesBlock(FIXED_LITERALS, FIXED_DISTANCES);
+                    } else if (type == 2) {
+                        dynamicBlock();
+                    } else {
+                        throw new DataFormatException("Invalid block type");
+                    }
+                } while (!lastBlock);
+                //skip the padding, crc and size
+                bits(bitCount & 7);
+                bits(16);
+                bits(16);
+                bits(16);
+                bits(16);
+            }
+            writeOutput();
+        } catch (DataFormatException ex) {
+            throw new IOException(ex);
+        }
+        return new GzipIndex(fileLength, lastModified, output, checkpoints);
+    }
+
+    /**
+     * Reads the header of the next gzip member
+     *
+     * @return false if there are no more members
+     */
+    private boolean readMemberHeader(boolean first) throws IOException, DataFormatException {
+        int id1 = nextByte();
+        int id2 = id1 == -1 ? -1 : nextByte();
+        if (id1 != 0x1f || id2 != 0x8b) {
+            if (first) {
+                throw new DataFormatException("Not in gzip format");
+            }
+            //end of file, or trailing garbage
+            return false;
+        }
+        if (bits(8) != 8) {
+            throw new DataFormatException("Unsupported compression method");
+        }
+        int flags = bits(8);
+        //mtime, extra flags and os
+        for (int i = 0; i < 6; i++) {
+            bits(8);
+        }
+        if ((flags & 4) != 0) {
+            int length = bits(16);
+            for (int i = 0; i < length; i++) {
+                bits(8);
+            }
+        }
+        if ((flags & 8) != 0) {
+            while (bits(8) != 0) ;
+        }
+        if ((flags & 16) != 0) {
+            while (bits(8) != 0) ;
+        }
+        if ((flags & 2) != 0) {
+            bits(16);
+        }
+        return true;
+    }
+
+    /**
+     * Saves the current position along with the data the following blocks may refer to
+     */
+    private void addCheckpoint() {
+        int windowLength = (int) Math.min(output - memberOutput, GzipIndex.WINDOW_SIZE);
+        byte[] checkpointWindow = new byte[windowLength];
+        for (int i = 0; i < windowLength; i++) {
+            checkpointWindow[i] = window[(int) (output - windowLength + i) & WINDOW_MASK];
+        }
+        checkpoints.add(new GzipIndex.Checkpoint(bytesRead * 8 - bitCount, output, checkpointWindow));
+        lastCheckpoint = output;
+    }
+
+    private void storedBlock() throws IOException, DataFormatException {
+        bits(bitCount & 7);
+        int length = bits(16);
+        int complement = bits(16);
+        if ((length ^ 0xffff) != complement) {
+            throw new DataFormatException("Invalid stored block length");
+        }
+        for (int i = 0; i < length; i++) {
+            window[(int) output++ & WINDOW_MASK] = (byte) bits(8);
+            if (output - outputWritten >= OUTPUT_SIZE) {
+                writeOutput();
+            }
+        }
+    }
+
+    private void dynamicBlock() throws IOException, DataFormatException {
+        int literalCount = bits(5) + 257;
+        int distanceCount = bits(5) + 1;
+        int codeLengthCount = bits(4) + 4;
+        if (literalCount > 286 || distanceCount > 30) {
+            throw new DataFormatException("Invalid code counts");
+        }
+        int[] lengths = new int[19];
+        for (int i = 0; i < codeLengthCount; i++) {
+            lengths[CODE_LENGTH_ORDER[i]] = bits(3);
+        }
+        HuffmanTable codeLengths = new HuffmanTable(lengths, 19);
+        lengths = new int[literalCount + distanceCount];
+        int index = 0;
+        while (index < lengths.length) {
+            int symbol = decode(codeLengths);
+            if (symbol < 16) {
+                lengths[index++] = symbol;
+                continue;
+            }
+            int length = 0;
+            int repeat;
+            if (symbol == 16) {
+                if (index == 0) {
+                    throw new DataFormatException("Repeat with no previous length");
+                }
+                length = lengths[index - 1];
+                repeat = 3 + bits(2);
+            } else if (symbol == 17) {
+                repeat = 3 + bits(3);
+            } else {
+                repeat = 11 + bits(7);
+            }
+            if (index + repeat > lengths.length) {
+                throw new DataFormatException("Too many code lengths");
+            }
+            while (repeat-- > 0) {
+                lengths[index++] = length;
+            }
+        }
+        if (lengths[256] == 0) {
+            throw new DataFormatException("Missing end of block code");
+        }
+        HuffmanTable literals = new HuffmanTable(lengths, literalCount);
+        HuffmanTable distances = new HuffmanTable(Arrays.copyOfRange(lengths, literalCount, lengths.length), distanceCount);
+        codesBlock(literals, distances);
+    }
+
+    private void codesBlock(HuffmanTable literals, HuffmanTable distances) throws IOException, DataFormatException {
+        while (true) {
+            if (output - outputWritten >= OUTPUT_SIZE) {
+                writeOutput();
+            }
+            int symbol = decode(literals);
+            if (symbol < 256) {
+                window[(int) output++ & WINDOW_MASK] = (byte) symbol;
+            } else if (symbol == 256) {
+                return;
+            } else {
+                symbol -= 257;
+                if (symbol >= 29) {
+                    throw new DataFormatException("Invalid length code");
+                }
+                int length = LENGTH_BASE[symbol] + bits(LENGTH_EXTRA[symbol]);
+                symbol = decode(distances);
+                if (symbol >= 30) {
+                    throw new DataFormatException("Invalid distance code");
+                }
+                int distance = DISTANCE_BASE[symbol] + bits(DISTANCE_EXTRA[symbol]);
+                if (distance > output - memberOutput) {
+                    throw new DataFormatException("Distance too far back");
+                }
+                for (int i = 0; i < length; i++) {
+                    window[(int) output & WINDOW_MASK] = window[(int) (output - distance) & WINDOW_MASK];
+                    output++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands the output decompressed since the last time to the output stream, if there is one
+     */
+    private void writeOutput() throws IOException {
+        if (out != null) {
+            while (outputWritten < output) {
+                int start = (int) outputWritten & WINDOW_MASK;
+                int length = (int) Math.min(output - outputWritten, GzipIndex.WINDOW_SIZE - start);
+                out.write(window, start, length);
+                outputWritten += length;
+            }
+        }
+        outputWritten = output;
+    }
+
+    private int decode(HuffmanTable table) throws IOException, DataFormatException {
+        fill(table.bits);
+        int entry = table.entries[(int) bitBuffer & ((1 << table.bits) - 1)];
+        int length = entry & 0xf;
+        if (length == 0) {
+            throw new DataFormatException("Invalid code");
+        }
+        bitBuffer >>>= length;
+        bitCount -= length;
+        checkEnd();
+        return entry >>> 4;
+    }
+
+    private int bits(int count) throws IOException {
+        if (count == 0) {
+            return 0;
+        }
+        fill(count);
+        int value = (int) bitBuffer & ((1 << count) - 1);
+        bitBuffer >>>= count;
+        bitCount -= count;
+        checkEnd();
+        return value;
+    }
+
+    /**
+     * Makes sure the bit buffer has the given number of bits. Past the end of the file it is filled with zeros,
+     * so that the codes near the end can be looked up, but they can not be consumed.
+     */
+    private void fill(int count) throws IOException {
+        while (bitCount < count) {
+            int b = read();
+            bitBuffer |= (long) (b == -1 ? 0 : b) << bitCount;
+            bitCount += 8;
+            bytesRead++;
+        }
+    }
+
+    private void checkEnd() throws EOFException {
+        if (bytesRead > fileLength && bytesRead * 8 - bitCount > fileLength * 8) {
+            throw new EOFException("Unexpected end of gzip file");
+        }
+    }
+
+    /**
+     * Returns the next byte at a byte boundary, or -1 at the end of the file
+     */
+    private int nextByte() throws IOException {
+        if (bitCount >= 8) {
+            return bits(8);
+        }
+        int b = read();
+        if (b != -1) {
+            bytesRead++;
+        }
+        return b;
+    }
+
+    private int read() throws IOException {
+        if (bufferPosition == bufferLimit) {
+            bufferLimit = Math.max(in.read(buffer), 0);
+            bufferPosition = 0;
+            if (bufferLimit == 0) {
+                return -1;
+            }
+        }
+        return buffer[bufferPosition++] & 0xff;
+    }
+
+    /**
+     * Lookup table for a canonical huffman code, indexed by the next bits of the stream.
+     * Each entry holds the symbol and the length of its code.
+     */
+    private static final class HuffmanTable {
+
+        private final int[] entries;
+        private final int bits;
+
+        HuffmanTable(int[] lengths, int count) {
+            int maxLength = 0;
+            int[] lengthCount = new int[MAX_BITS + 1];
+            for (int i = 0; i < count; i++) {
+                lengthCount[lengths[i]]++;
+                maxLength = Math.max(maxLength, lengths[i]);
+            }
+            bits = Math.max(maxLength, 1);
+            entries = new int[1 << bits];
+            int[] nextCode = new int[MAX_BITS + 2];
+            int code = 0;
+            lengthCount[0] = 0;
+            for (int length = 1; length <= MAX_BITS; length++) {
+                code = (code + lengthCount[length - 1]) << 1;
+                nextCode[length] = code;
+            }
+            for (int symbol = 0; symbol < count; symbol++) {
+                int length = lengths[symbol];
+                if (length != 0) {
+                    int reversed = Integer.reverse(nextCode[length]++) >>> (32 - length);
+                    for (int i = reversed; i < entries.length; i += 1 << length) {
+                        entries[i] = symbol << 4 | length;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import java.io.File;
+import java.io.InputStream;
+
+/**
+ * Reader for gzip compressed log files.
+ * The members of the file are inflated in parallel by {@link MultiMemberGzipInputStream}, and the lines are
+ * parsed in parallel by {@link ParallelLineParser}. A large file made of a single member is indexed in the
+ * background after it is read, so that reading it again can be parallel using the {@link GzipIndex}.
+ */
+class GzipLogFileReader extends LogFileReader {
+
+    private static final long INDEX_SIZE_THRESHOLD = 16 * 1024 * 1024;
+
+
+    GzipLogFileReader(File file) {
+        super(file);
+    }
+
+    @Override
+    public boolean canFollow() {
+        return false;
+    }
+
+    @Override
+    public boolean canReadTimeRange() {
+        return false;
+    }
+
+    @Override
+    public void readFileData(LogFileReaderListener listener) throws Exception {
+        startBatches(listener);
+        setReadLength(getFile().length());
+        GzipIndex index = GzipIndex.load(getFile());
+        MultiMemberGzipInputStream memberStream = null;
+        InputStream in;
+        if (index != null) {
+            in = new IndexedGzipInputStream(getFile(), index, 0, listener);
+        } else {
+            memberStream = new MultiMemberGzipInputStream(getFile(), listener);
+            in = memberStream;
+        }
+        try {
+            new ParallelLineParser(this).parse(parser -> parser.submitStream(null, in));
+            flushBatch();
+        } finally {
+            try {
+                in.close();
+            } catch (Exception e) {
+            }
+        }
+        if (memberStream != null && memberStream.getMemberCount() == 1 && getFile().length() >= INDEX_SIZE_THRESHOLD) {
+            GzipIndex.buildInBackground(getFile());
+        }
+    }
+}
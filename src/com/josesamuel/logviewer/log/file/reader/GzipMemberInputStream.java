@@ -0,0 +1,166 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Stream of the decompressed data of one member of a gzip file, starting at a given offset of the file.
+ * The checksum and the size of the member are verified at its end.
+ */
+class GzipMemberInputStream extends InputStream {
+
+    private static final int READ_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final long start;
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+    private final byte[] buffer = new byte[READ_SIZE];
+    private int bufferPosition;
+    private int bufferLength;
+    private long bufferOffset;
+    private long end = -1;
+
+    /**
+     * Opens the member starting at the given offset of the file.
+     * The channel is only read using absolute positions, so it can be shared with other streams.
+     */
+    GzipMemberInputStream(FileChannel channel, long start) throws IOException {
+        this.channel = channel;
+        this.start = start;
+        this.bufferOffset = start;
+        readHeader();
+    }
+
+    /**
+     * Returns the offset of the file where this member starts
+     */
+    long getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the offset of the file right after this member, or -1 if the member is not read fully yet
+     */
+    long getEnd() {
+        return end;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (end != -1) {
+            return -1;
+        }
+        try {
+            while (true) {
+                if (inflater.needsInput()) {
+                    if (bufferPosition == bufferLength && !fill()) {
+                        throw new EOFException("Unexpected end of gzip file");
+                    }
+                    inflater.setInput(buffer, bufferPosition, bufferLength - bufferPosition);
+                    bufferPosition = bufferLength;
+                }
+                int count = inflater.inflate(b, off, len);
+                if (count > 0) {
+                    crc.update(b, off, count);
+                    return count;
+                }
+                if (inflater.finished()) {
+                    readTrailer();
+                    return -1;
+                }
+                if (inflater.needsDictionary()) {
+                    throw new ZipException("Invalid gzip data");
+                }
+            }
+        } catch (DataFormatException ex) {
+            throw new ZipException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        inflater.end();
+    }
+
+    private void readHeader() throws IOException {
+        if (readByte() != 0x1f || readByte() != 0x8b || readByte() != 8) {
+            throw new ZipException("Not in gzip format");
+        }
+        int flags = readByte();
+        //mtime, extra flags and os
+        skip(6);
+        if ((flags & 4) != 0) {
+            skip(readByte() | readByte() << 8);
+        }
+        if ((flags & 8) != 0) {
+            while (readByte() != 0) ;
+        }
+        if ((flags & 16) != 0) {
+            while (readByte() != 0) ;
+        }
+        if ((flags & 2) != 0) {
+            skip(2);
+        }
+    }
+
+    /**
+     * Verifies the checksum and the size at the end of the member
+     */
+    private void readTrailer() throws IOException {
+        long deflateEnd = bufferOffset + bufferLength - inflater.getRemaining();
+        ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        while (trailer.hasRemaining()) {
+            if (channel.read(trailer, deflateEnd + trailer.position()) <= 0) {
+                throw new EOFException("Unexpected end of gzip file");
+            }
+        }
+        if ((trailer.getInt(0) & 0xffffffffL) != crc.getValue()
+                || (trailer.getInt(4) & 0xffffffffL) != (inflater.getBytesWritten() & 0xffffffffL)) {
+            throw new ZipException("Corrupt gzip trailer");
+        }
+        end = deflateEnd + 8;
+    }
+
+    private int readByte() throws IOException {
+        if (bufferPosition == bufferLength && !fill()) {
+            throw new EOFException("Unexpected end of gzip file");
+        }
+        return buffer[bufferPosition++] & 0xff;
+    }
+
+    private void skip(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            readByte();
+        }
+    }
+
+    /**
+     * Reads the next part of the file in to the buffer
+     *
+     * @return false at the end of the file
+     */
+    private boolean fill() throws IOException {
+        bufferOffset += bufferLength;
+        ByteBuffer readBuffer = ByteBuffer.wrap(buffer);
+        while (readBuffer.hasRemaining() && channel.read(readBuffer, bufferOffset + readBuffer.position()) > 0) ;
+        bufferPosition = 0;
+        bufferLength = readBuffer.position();
+        return bufferLength > 0;
+    }
+}
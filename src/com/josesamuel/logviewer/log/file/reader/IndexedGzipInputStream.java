@@ -0,0 +1,120 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Stream of the decompressed data of a gzip file that has a {@link GzipIndex}.
+ * It can start at any offset of the decompressed data, by decompressing from the checkpoint before it.
+ * The spans following the current one are decompressed ahead in parallel.
+ */
+class IndexedGzipInputStream extends InputStream {
+
+    private final GzipIndex index;
+    private final FileChannel channel;
+    private final LogFileReader.LogFileReaderListener listener;
+    private final long fileLength;
+    private final int workerCount;
+    private final ExecutorService executor;
+    private final Deque<Future<byte[]>> pendingSpans = new ArrayDeque<>();
+    private int nextSpan;
+    private byte[] span;
+    private int spanPosition;
+
+    /**
+     * Opens the given file at the given offset of the decompressed data
+     *
+     * @param listener Listener that is notified about the progress as the spans are read, or null
+     */
+    IndexedGzipInputStream(File file, GzipIndex index, long offset, LogFileReader.LogFileReaderListener listener) throws IOException {
+        this.index = index;
+        this.listener = listener;
+        this.fileLength = file.length();
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.workerCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        this.executor = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "LogViewer gzip " + file.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        nextSpan = index.getSpan(offset);
+        long spanStart = index.getSpanStart(nextSpan);
+        if (nextSpan()) {
+            spanPosition = (int) Math.min(offset - spanStart, span.length);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (span != null && spanPosition == span.length) {
+            nextSpan();
+        }
+        if (span == null) {
+            return -1;
+        }
+        int count = Math.min(len, span.length - spanPosition);
+        System.arraycopy(span, spanPosition, b, off, count);
+        spanPosition += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return span != null ? span.length - spanPosition : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        channel.close();
+    }
+
+    /**
+     * Moves to the next span, and queues the decompression of the spans after it
+     *
+     * @return false if there are no more spans
+     */
+    private boolean nextSpan() throws IOException {
+        while (pendingSpans.size() < workerCount * 2 && nextSpan < index.getSpanCount()) {
+            int spanIndex = nextSpan++;
+            pendingSpans.add(executor.submit(() -> index.inflateSpan(channel, spanIndex)));
+        }
+        Future<byte[]> pendingSpan = pendingSpans.poll();
+        span = null;
+        spanPosition = 0;
+        if (pendingSpan == null) {
+            return false;
+        }
+        try {
+            span = pendingSpan.get();
+        } catch (InterruptedException ex) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException(ex.getCause());
+        }
+        if (listener != null) {
+            listener.onProgress(index.getCompressedSpanStart(nextSpan - pendingSpans.size()), fileLength);
+        }
+        return true;
+    }
+}
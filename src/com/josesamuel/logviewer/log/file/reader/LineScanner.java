@@ -0,0 +1,141 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits a stream in to lines at the byte level, using one large buffer that is reused for all the lines.
+ * The lines are handed over as ranges of the buffer, without being decoded, so that only the parts
+ * that are used are decoded. The data is always decoded as UTF-8, rather than in the platform charset.
+ */
+class LineScanner {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * Consumer of the lines found by the {@link LineScanner}
+     */
+    interface LineConsumer {
+        /**
+         * Called with each line, without the line break.
+         * The data is only valid during the call.
+         */
+        void onLine(byte[] data, int start, int end) throws Exception;
+    }
+
+    /**
+     * Reads the given stream to its end, handing over each line to the consumer
+     */
+    void scan(InputStream in, LineConsumer consumer) throws Exception {
+        int length = 0;
+        int lineStart = 0;
+        int read;
+        while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+            int end = length + read;
+            for (int i = length; i < end; i++) {
+                if (buffer[i] == '\n') {
+                    onLine(consumer, lineStart, i);
+                    lineStart = i + 1;
+                }
+            }
+            length = end;
+            if (length == buffer.length) {
+                if (lineStart == 0) {
+                    //the line does not fit in the buffer
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                } else {
+                    System.arraycopy(buffer, lineStart, buffer, 0, length - lineStart);
+                    length -= lineStart;
+                    lineStart = 0;
+                }
+            }
+        }
+        if (lineStart < length) {
+            onLine(consumer, lineStart, length);
+        }
+    }
+
+    private void onLine(LineConsumer consumer, int start, int end) throws Exception {
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        consumer.onLine(buffer, start, end);
+    }
+
+    /**
+     * Decodes the given range of UTF-8 data
+     */
+    static String decode(byte[] data, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (data[i] < 0) {
+                return new String(data, start, end - start, StandardCharsets.UTF_8);
+            }
+        }
+        return new String(data, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Decodes the given range of UTF-8 data directly in to the builder, without creating a String.
+     * Malformed data, which is rare, is left to {@link StandardCharsets#UTF_8} so that it is replaced the same way.
+     */
+    static void appendDecoded(byte[] data, int start, int end, StringBuilder out) {
+        int i = start;
+        while (i < end) {
+            int b = data[i] & 0xff;
+            if (b < 0x80) {
+                out.append((char) b);
+                i++;
+                continue;
+            }
+            int length;
+            int codePoint;
+            int min = 0x80;
+            int max = 0xbf;
+            if (b >= 0xc2 && b <= 0xdf) {
+                length = 2;
+                codePoint = b & 0x1f;
+            } else if (b >= 0xe0 && b <= 0xef) {
+                length = 3;
+                codePoint = b & 0x0f;
+                if (b == 0xe0) {
+                    min = 0xa0;
+                } else if (b == 0xed) {
+                    max = 0x9f;
+                }
+            } else if (b >= 0xf0 && b <= 0xf4) {
+                length = 4;
+                codePoint = b & 0x07;
+                if (b == 0xf0) {
+                    min = 0x90;
+                } else if (b == 0xf4) {
+                    max = 0x8f;
+                }
+            } else {
+                break;
+            }
+            int next = i + 1;
+            while (next < i + length && next < end) {
+                int continuation = data[next] & 0xff;
+                if (continuation < min || continuation > max) {
+                    break;
+                }
+                codePoint = codePoint << 6 | (continuation & 0x3f);
+                min = 0x80;
+                max = 0xbf;
+                next++;
+            }
+            if (next != i + length) {
+                break;
+            }
+            out.appendCodePoint(codePoint);
+            i = next;
+        }
+        if (i < end) {
+            out.append(new String(data, i, end - i, StandardCharsets.UTF_8));
+        }
+    }
+}
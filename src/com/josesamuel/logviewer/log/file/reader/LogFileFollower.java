@@ -0,0 +1,209 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import com.josesamuel.logviewer.log.LogProcess;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Follows a log file that is still being written, like "tail -F".
+ * The file is polled for new data, and only the bytes appended after the last read offset are read.
+ * A truncated file is read again from the start. If the file is rotated, the rest of the old file
+ * is read from the already open channel before switching to the new file.
+ * If reading fails, the file is opened again on the next poll, from the first line that was not delivered.
+ */
+public class LogFileFollower {
+
+    private static final long POLL_INTERVAL = 500;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final LogFileFollowerListener listener;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+    private final LogLineParser lineParser = new LogLineParser();
+    private final StringBuilder parsedLine = new StringBuilder();
+    private Timer timer;
+    private FileChannel channel;
+    private Object fileIdentity;
+    //offset of the first line that is not yet delivered
+    private long offset;
+
+    /**
+     * Initialize with the file to follow, and the listener to notify about the new lines
+     */
+    public LogFileFollower(File file, LogFileFollowerListener listener) {
+        this.file = file;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts following the file from the given offset
+     */
+    public synchronized void start(long offset) {
+        stop();
+        this.offset = offset;
+        try {
+            openChannel(offset);
+        } catch (IOException ex) {
+            closeChannel();
+        }
+        timer = new Timer("LogViewer follow " + file.getName(), true);
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, POLL_INTERVAL, POLL_INTERVAL);
+    }
+
+    /**
+     * Stops following the file
+     */
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+        closeChannel();
+        partialLine.reset();
+    }
+
+    /**
+     * Returns the offset of the first line that is not yet delivered
+     */
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns whether the file is being followed
+     */
+    public synchronized boolean isFollowing() {
+        return timer != null;
+    }
+
+    /**
+     * Checks the file for truncation, rotation and new data
+     */
+    private synchronized void poll() {
+        if (timer == null) {
+            return;
+        }
+        try {
+            BasicFileAttributes attributes = file.exists() ? Files.readAttributes(file.toPath(), BasicFileAttributes.class) : null;
+            if (channel == null) {
+                if (attributes != null) {
+                    //after a failed read the same file goes on from where it was, a new one is read from its start
+                    openChannel(getIdentity(attributes).equals(fileIdentity) ? offset : 0);
+                }
+            } else if (attributes != null && !getIdentity(attributes).equals(fileIdentity)) {
+                //rotated, finish the old file before moving to the new one
+                readAppended();
+                flushPartialLine();
+                closeChannel();
+                openChannel(0);
+            } else if (attributes != null && attributes.size() < channel.position()) {
+                //truncated, start again from the beginning
+                partialLine.reset();
+                channel.position(0);
+                offset = 0;
+            }
+            if (channel != null) {
+                readAppended();
+            }
+        } catch (Exception ex) {
+            closeChannel();
+            partialLine.reset();
+        }
+    }
+
+    /**
+     * Reads the data from the current position to the end of the channel
+     */
+    private void readAppended() throws IOException {
+        readBuffer.clear();
+        while (channel.read(readBuffer) > 0) {
+            readBuffer.flip();
+            byte[] data = readBuffer.array();
+            int lineStart = 0;
+            int limit = readBuffer.limit();
+            long dataOffset = channel.position() - limit;
+            for (int i = 0; i < limit; i++) {
+                if (data[i] == '\n') {
+                    partialLine.write(data, lineStart, i - lineStart);
+                    flushPartialLine();
+                    lineStart = i + 1;
+                    offset = dataOffset + lineStart;
+                }
+            }
+            partialLine.write(data, lineStart, limit - lineStart);
+            readBuffer.clear();
+        }
+    }
+
+    /**
+     * Delivers the line collected so far to the listener
+     */
+    private void flushPartialLine() {
+        if (partialLine.size() > 0) {
+            byte[] bytes = partialLine.toByteArray();
+            partialLine.reset();
+            int end = bytes.length;
+            if (bytes[end - 1] == '\r') {
+                end--;
+            }
+            LogProcess logProcess = new LogProcess();
+            parsedLine.setLength(0);
+            if (lineParser.parseLine(bytes, 0, end, null, logProcess, parsedLine)) {
+                //without the line break the parser ends it with
+                listener.onLogLine(parsedLine.substring(0, parsedLine.length() - 1), logProcess);
+            }
+        }
+    }
+
+    private void openChannel(long offset) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        fileIdentity = getIdentity(Files.readAttributes(file.toPath(), BasicFileAttributes.class));
+        channel.position(Math.min(offset, channel.size()));
+        this.offset = channel.position();
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * Returns what identifies the file, the inode where it is available or the creation time otherwise
+     */
+    private static Object getIdentity(BasicFileAttributes attributes) {
+        Object fileKey = attributes.fileKey();
+        return fileKey != null ? fileKey : attributes.creationTime();
+    }
+
+
+    /**
+     * Listener that receives the lines appended to the file
+     */
+    public interface LogFileFollowerListener {
+        /**
+         * Called when a new line is appended to the file
+         */
+        void onLogLine(String log, LogProcess process);
+    }
+}
@@ -3,22 +3,34 @@ package com.josesamuel.logviewer.log.file.reader;
 
 import com.android.ddmlib.logcat.LogCatMessage;
 import com.android.tools.idea.logcat.AndroidLogcatFormatter;
-import com.josesamuel.logviewer.log.LogDataListener;
+import com.josesamuel.logviewer.log.LogLines;
 import com.josesamuel.logviewer.log.LogProcess;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 
 public class LogFileReader {
 
+    private static final int BATCH_SIZE = 64 * 1024;
+    private static final long BATCH_INTERVAL = 250;
+
     private File file;
     private Set<LogProcess> processes;
+    private LogFileReaderListener listener;
+    private StringBuilder batch;
+    private long batchTime;
+    private long readLength;
+    private boolean mergeByTime;
+    private LogTimeRange timeRange;
+    private boolean newestFirst;
 
     LogFileReader(File file) {
         this.file = file;
@@ -29,49 +41,316 @@ public class LogFileReader {
         return file;
     }
 
-    public StringBuffer getFileData(LogDataListener listener) throws Exception {
-        BufferedReader reader = null;
-        StringBuffer data = null;
-        try {
-            reader = new BufferedReader(
-                    new InputStreamReader(new FileInputStream(file)));
-            data = getFileData(reader, null);
-        } finally {
-            try {
-                if (reader != null) {
-                    reader.close();
-                }
-            } catch (Exception e) {
-            }
+    /**
+     * Reads the file, delivering the data to the given listener in batches as it is read
+     */
+    public void readFileData(LogFileReaderListener listener) throws Exception {
+        startBatches(listener);
+        if (timeRange != null) {
+            readTimeRange(timeRange);
+            flushBatch();
+            return;
+        }
+        if (isNewestFirst()) {
+            new NewestFirstReader(this).read();
+            flushBatch();
+            return;
+        }
+        try (InputStream in = openFileInputStream()) {
+            readFileData(in, null);
+            flushBatch();
         }
-        return data;
+    }
+
+    /**
+     * Returns the file as {@link LogLines} that are decoded on demand,
+     * or null if this reader only supports {@link #readFileData(LogFileReaderListener)}
+     */
+    public LogLines getFileLines(LogFileReaderListener listener) throws Exception {
+        return null;
     }
 
     public Set<LogProcess> getProcesses() {
         return processes;
     }
 
-    StringBuffer getFileData(BufferedReader reader, String fileName) throws Exception {
-        StringBuffer data = new StringBuffer();
-        String line;
-        while ((line = reader.readLine()) != null) {
-            updateAndAddLine(data, line, fileName);
-        }
-        return data;
+    /**
+     * Returns the number of bytes of the file that were read.
+     * Data appended to the file after it was opened is not read.
+     */
+    public long getReadLength() {
+        return readLength;
+    }
+
+    void setReadLength(long readLength) {
+        this.readLength = readLength;
+    }
+
+    /**
+     * Returns whether the file can be followed for appended lines using {@link LogFileFollower}
+     */
+    public boolean canFollow() {
+        return true;
+    }
+
+    /**
+     * Returns whether the file holds several logs, which can be merged in to one by their timestamps
+     */
+    public boolean canMergeByTime() {
+        return false;
+    }
+
+    /**
+     * Sets whether the logs in the file are merged by their timestamps, instead of being read one after the other.
+     * Only used if {@link #canMergeByTime()}.
+     */
+    public void setMergeByTime(boolean mergeByTime) {
+        this.mergeByTime = mergeByTime;
+    }
+
+    boolean isMergeByTime() {
+        return mergeByTime && canMergeByTime();
+    }
+
+    /**
+     * Returns whether only the lines within a {@link LogTimeRange} can be read from the file
+     */
+    public boolean canReadTimeRange() {
+        return true;
+    }
+
+    /**
+     * Sets the time range of the lines to read, or null to read all of them.
+     * Only used if {@link #canReadTimeRange()}.
+     */
+    public void setTimeRange(LogTimeRange timeRange) {
+        this.timeRange = timeRange;
+    }
+
+    LogTimeRange getTimeRange() {
+        return canReadTimeRange() ? timeRange : null;
+    }
+
+    /**
+     * Returns whether the file can be read newest first, which like a time range needs random access to its text
+     */
+    public boolean canReadNewestFirst() {
+        return canReadTimeRange();
+    }
+
+    /**
+     * Sets whether the last lines of the file are delivered first, and the older lines are read after them.
+     * Only used if {@link #canReadNewestFirst()} and no time range is set.
+     */
+    public void setNewestFirst(boolean newestFirst) {
+        this.newestFirst = newestFirst;
     }
 
-    protected void updateAndAddLine(StringBuffer data, String line, String fileName) {
+    boolean isNewestFirst() {
+        return newestFirst && canReadNewestFirst() && getTimeRange() == null;
+    }
+
+    /**
+     * Opens the file up to its current length, reporting the progress to the listener as it is read
+     */
+    InputStream openFileInputStream() throws Exception {
+        readLength = file.length();
+        return new ProgressInputStream(new FileInputStream(file), readLength, listener);
+    }
+
+    /**
+     * Reads the lines of the given stream to its end, using the {@link LineScanner}
+     */
+    void readFileData(InputStream in, String fileName) throws Exception {
+        LogLineParser lineParser = new LogLineParser();
         LogProcess logProcess = new LogProcess();
+        new LineScanner().scan(in, (data, start, end) -> {
+            if (lineParser.parseLine(data, start, end, fileName, reset(logProcess), batch)) {
+                addProcess(logProcess);
+                flushBatchIfFull();
+            }
+        });
+    }
 
-        String log = LogLineUpdater.parseLogLine(line, fileName, logProcess);
-        if (log != null && !log.isEmpty()) {
-            data.append(log).append('\n');
-            if (logProcess.getProcessName() != null) {
-                processes.add(new LogProcess().setProcessID(logProcess.getProcessID())
-                        .setProcessName(logProcess.getProcessName()));
+    /**
+     * Reads only the part of the file within the time range, found with a {@link LogTimeSearch},
+     * so the time it takes depends on the size of the range and not of the file.
+     * The lines of the part are still filtered by their time, a line without one goes with the line before it.
+     */
+    private void readTimeRange(LogTimeRange timeRange) throws Exception {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            LogTimeSearch search = new LogTimeSearch(channel);
+            long firstTime = search.getFirstTime();
+            long startTime = timeRange.getStart(firstTime);
+            long endTime = timeRange.getEnd(firstTime);
+            long start = search.nextLineStart(search.findOffset(startTime) - LogTimeSearch.MARGIN);
+            long end = search.nextLineStart(search.findOffset(endTime + 1) + LogTimeSearch.MARGIN);
+            readLength = channel.size();
+            if (end <= start) {
+                return;
+            }
+            LogLineParser lineParser = new LogLineParser();
+            LogProcess logProcess = new LogProcess();
+            boolean[] inRange = new boolean[1];
+            try (InputStream in = new ProgressInputStream(new FileSliceInputStream(channel, start, end - start), end - start, listener)) {
+                new LineScanner().scan(in, (data, lineStart, lineEnd) -> {
+                    int length = batch.length();
+                    if (lineParser.parseLine(data, lineStart, lineEnd, null, reset(logProcess), batch)) {
+                        long time = LogTimeMerger.parseTime(batch, length);
+                        if (time >= 0) {
+                            inRange[0] = time >= startTime && time <= endTime;
+                        }
+                        if (inRange[0]) {
+                            addProcess(logProcess);
+                            flushBatchIfFull();
+                        } else {
+                            batch.setLength(length);
+                        }
+                    }
+                });
             }
         }
+    }
+
+    /**
+     * Adds a line that is already in the format of {@link AndroidLogcatFormatter}, along with its process
+     */
+    void addLine(CharSequence log, LogProcess logProcess) {
+        batch.append(log).append('\n');
+        addProcess(logProcess);
+        flushBatchIfFull();
+    }
+
+    /**
+     * Adds the process of a line, copying it only if it is new, so the process can be reused for the next line
+     */
+    void addProcess(LogProcess logProcess) {
+        if (logProcess.getProcessName() != null && !processes.contains(logProcess)) {
+            processes.add(copy(logProcess));
+        }
+    }
+
+    /**
+     * Returns a copy of the given process
+     */
+    static LogProcess copy(LogProcess logProcess) {
+        return new LogProcess().setProcessID(logProcess.getProcessID()).setProcessName(logProcess.getProcessName());
+    }
+
+    /**
+     * Resets the given process to the one of a line without a process, so it can be reused to parse the next line
+     */
+    static LogProcess reset(LogProcess logProcess) {
+        return logProcess.setProcessName(null).setProcessID(0);
+    }
+
+    /**
+     * Adds the lines that were already parsed, along with the processes found in them
+     */
+    void addParsedData(String logData, Set<LogProcess> logProcesses) {
+        batch.append(logData);
+        processes.addAll(logProcesses);
+        flushBatchIfFull();
+    }
+
+    private void flushBatchIfFull() {
+        if (batch.length() >= BATCH_SIZE || System.currentTimeMillis() - batchTime >= BATCH_INTERVAL) {
+            flushBatch();
+        }
+    }
+
+    /**
+     * Starts collecting the lines in batches for the given listener
+     */
+    void startBatches(LogFileReaderListener listener) {
+        this.listener = listener;
+        this.batch = new StringBuilder();
+        this.batchTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Delivers the lines collected so far to the listener
+     */
+    void flushBatch() {
+        checkCancelled();
+        if (batch.length() > 0) {
+            listener.onLogData(batch.toString());
+            batch.setLength(0);
+        }
+        batchTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Delivers the lines of a block that goes before all the lines delivered so far, when the file is read newest first
+     */
+    void addOlderData(String logData) {
+        checkCancelled();
+        if (!logData.isEmpty()) {
+            listener.onOlderLogData(logData);
+        }
+    }
+
+    /**
+     * Returns the listener that receives the data while the file is being read
+     */
+    LogFileReaderListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Reports the progress to the listener
+     */
+    void updateProgress(long bytesRead, long totalBytes) {
+        checkCancelled();
+        listener.onProgress(bytesRead, totalBytes);
+    }
+
+    /**
+     * Stops the read with a {@link CancellationException} if the listener cancelled it
+     */
+    void checkCancelled() {
+        if (listener != null && listener.isCancelled()) {
+            throw new CancellationException();
+        }
+    }
+
+
+    /**
+     * Listener that receives the data while the file is being read
+     */
+    public interface LogFileReaderListener {
+        /**
+         * Called with the next batch of log lines read from the file
+         */
+        void onLogData(String logData);
 
+        /**
+         * Called when more of the file has been read
+         */
+        void onProgress(long bytesRead, long totalBytes);
+
+        /**
+         * Called with the lines of a block that goes before all the lines given so far, when the file is read newest first.
+         * The lines within the block are in the order of the file.
+         */
+        default void onOlderLogData(String logData) {
+        }
+
+        /**
+         * Called with the sections found in the file, before they are read.
+         * Only the returned sections that are selected are read. By default the sections selected by the reader are read.
+         */
+        default List<LogFileSection> onSelectSections(List<LogFileSection> sections) {
+            return sections;
+        }
+
+        /**
+         * Returns whether the read is cancelled. The readers check this as they go,
+         * and stop with a {@link CancellationException}, keeping the data delivered so far.
+         */
+        default boolean isCancelled() {
+            return false;
+        }
     }
 
 }
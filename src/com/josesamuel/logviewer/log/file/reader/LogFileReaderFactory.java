@@ -1,10 +1,59 @@
 package com.josesamuel.logviewer.log.file.reader;
 
 import java.io.File;
+import java.util.List;
 
+/**
+ * Creates the {@link LogFileReader} for a file. The format is detected from the first bytes of the file,
+ * and from its name if that does not tell.
+ */
 public class LogFileReaderFactory {
 
+    /**
+     * Plain files larger than this are memory mapped instead of being read in to memory
+     */
+    private static final long MAPPED_FILE_SIZE_THRESHOLD = 64 * 1024 * 1024;
+
+    /**
+     * Returns the reader for the given file. Large files are read through the {@link ParseCache}.
+     */
     public static LogFileReader getFileReader(File file) {
+        LogFileReader reader = createFileReader(file);
+        if (file.length() >= CachedLogFileReader.MIN_FILE_SIZE) {
+            return new CachedLogFileReader(reader);
+        }
+        return reader;
+    }
+
+    /**
+     * Returns the reader for the given files, which are read as one log merged by time.
+     * A single file is read by its own reader.
+     */
+    public static LogFileReader getFileReader(List<File> files) {
+        if (files.size() == 1) {
+            return getFileReader(files.get(0));
+        }
+        return new MultiFileLogReader(files);
+    }
+
+    private static LogFileReader createFileReader(File file) {
+        switch (ArchiveFormat.detect(file)) {
+            case ZIP:
+                return new ZipLogFileReader(file);
+            case TAR:
+                return new TarLogFileReader(file);
+            case GZIP:
+                if (ArchiveFormat.isCompressedTar(file)) {
+                    return new TgzLogFileReader(file);
+                }
+                return new GzipLogFileReader(file);
+        }
+        if (BinaryLogFileReader.isBinaryLog(file)) {
+            return new BinaryLogFileReader(file);
+        }
+        if (BugreportLogFileReader.isBugreport(file)) {
+            return new BugreportLogFileReader(file);
+        }
         String fileName = file.getName().toLowerCase();
         if (fileName.endsWith(".tgz")) {
             return new TgzLogFileReader(file);
@@ -15,6 +64,9 @@ public class LogFileReaderFactory {
         if (fileName.endsWith(".zip")) {
             return new ZipLogFileReader(file);
         }
+        if (file.length() > MAPPED_FILE_SIZE_THRESHOLD) {
+            return new MappedLogFileReader(file);
+        }
         return new LogFileReader(file);
     }
 }
@@ -0,0 +1,73 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+/**
+ * A part of a log file that can be read on its own, like a section of a bugreport or an entry of an archive.
+ */
+public class LogFileSection {
+
+    private final String name;
+    private final long offset;
+    private final long length;
+    private final String format;
+    private boolean selected;
+
+    LogFileSection(String name, long offset, long length, boolean selected) {
+        this(name, offset, length, selected, null);
+    }
+
+    LogFileSection(String name, long offset, long length, boolean selected, String format) {
+        this.name = name;
+        this.offset = offset;
+        this.length = length;
+        this.selected = selected;
+        this.format = format;
+    }
+
+    /**
+     * Returns the name of the section
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the position of the section in the file, or -1 if it is not known, like for an entry of a zip
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the size of the section in bytes
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the format of the section, like "log" or "zip", or null if it is not known
+     */
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * Returns whether the section is read
+     */
+    public boolean isSelected() {
+        return selected;
+    }
+
+    /**
+     * Sets whether the section is read
+     */
+    public void setSelected(boolean selected) {
+        this.selected = selected;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,226 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import com.josesamuel.logviewer.log.LogProcess;
+
+/**
+ * Parses log lines found by the {@link LineScanner} without decoding them first.
+ * Lines in the format of {@link com.josesamuel.logviewer.view.AndroidLogcatFormatter} are checked at the byte level,
+ * the process id is read from the digits, and only the name of the process is decoded, which is reused across lines.
+ * Other lines are decoded and handed over to {@link LogLineUpdater}.
+ * Not thread safe, each thread parsing lines uses its own parser.
+ */
+class LogLineParser {
+
+    private static final int NAME_CACHE_SIZE = 256;
+    private static final int MAX_DIGITS = 9;
+    private static final String LEVELS = "VDIWEA";
+
+    private final byte[][] cachedNameBytes = new byte[NAME_CACHE_SIZE][];
+    private final String[] cachedNames = new String[NAME_CACHE_SIZE];
+
+    /**
+     * Parses the line between the given offsets of the data, appending it to the given builder followed by a line break
+     *
+     * @param fileName   Name of the file to which the line belongs, or null
+     * @param logProcess Process that is updated with the process of the line
+     * @return false if the line was dropped
+     */
+    boolean parseLine(byte[] data, int start, int end, String fileName, LogProcess logProcess, StringBuilder out) {
+        if (start == end) {
+            return false;
+        }
+        if (!parseLogcatLine(data, start, end, logProcess)) {
+            String log = LogLineUpdater.parseLogLine(LineScanner.decode(data, start, end), fileName, logProcess);
+            if (log == null || log.isEmpty()) {
+                return false;
+            }
+            out.append(log).append('\n');
+            return true;
+        }
+        LineScanner.appendDecoded(data, start, end, out);
+        out.append('\n');
+        return true;
+    }
+
+    /**
+     * Checks whether the line is accepted by {@link com.josesamuel.logviewer.view.AndroidLogcatFormatter#tryParseMessage(String)},
+     * and if so updates the process from it.
+     * Lines that are unusual in any way are left to the formatter, so that they are parsed exactly as before.
+     */
+    private boolean parseLogcatLine(byte[] data, int start, int end, LogProcess logProcess) {
+        //"MM-dd HH:mm:ss.SSS"
+        int i = start;
+        if (end - start < 19
+                || !isDigits(data, i, 2) || data[i + 2] != '-' || !isDigits(data, i + 3, 2) || data[i + 5] != ' '
+                || !isDigits(data, i + 6, 2) || data[i + 8] != ':' || !isDigits(data, i + 9, 2) || data[i + 11] != ':'
+                || !isDigits(data, i + 12, 2) || data[i + 14] != '.') {
+            return false;
+        }
+        int month = number(data, i, 2);
+        int day = number(data, i + 3, 2);
+        if (month < 1 || month > 12 || day < 1 || day > 31
+                || number(data, i + 6, 2) > 23 || number(data, i + 9, 2) > 59 || number(data, i + 12, 2) > 59) {
+            return false;
+        }
+        i += 15;
+        int millisStart = i;
+        while (i < end && isDigit(data[i])) {
+            i++;
+        }
+        if (i == millisStart || i - millisStart > 6) {
+            return false;
+        }
+        int spaceStart = i;
+        while (i < end && isSpace(data[i])) {
+            i++;
+        }
+        if (i == spaceStart) {
+            return false;
+        }
+
+        //"pid-tid/package"
+        int pidStart = i;
+        while (i < end && isDigit(data[i])) {
+            i++;
+        }
+        if (i == pidStart || i - pidStart > MAX_DIGITS || i >= end || data[i] != '-') {
+            return false;
+        }
+        int pid = number(data, pidStart, i - pidStart);
+        int tidStart = ++i;
+        while (i < end && isDigit(data[i])) {
+            i++;
+        }
+        if (i == tidStart || i - tidStart > MAX_DIGITS || i >= end || data[i] != '/') {
+            return false;
+        }
+        int packageStart = ++i;
+        while (i < end && !isSpace(data[i])) {
+            i++;
+        }
+        int packageEnd = i;
+        if (packageEnd == packageStart) {
+            return false;
+        }
+        while (i < end && isSpace(data[i])) {
+            i++;
+        }
+        if (i == packageEnd) {
+            return false;
+        }
+
+        //"L/tag: message"
+        if (i + 2 >= end || LEVELS.indexOf(data[i]) == -1 || data[i + 1] != '/') {
+            return false;
+        }
+        int tagStart = i + 2;
+        i = tagStart;
+        while (i < end && data[i] != ' ') {
+            i++;
+        }
+        int tagEnd = i - 1;
+        if (i == end || tagEnd <= tagStart || data[tagEnd] != ':') {
+            return false;
+        }
+        for (i = start; i < end; i++) {
+            if (isLineTerminator(data, i, end)) {
+                return false;
+            }
+        }
+
+        logProcess.setProcessID(pid);
+        if (!isUnknown(data, packageStart, packageEnd)) {
+            logProcess.setProcessName(getName(data, packageStart, packageEnd));
+        } else if (!isUnknown(data, tagStart, tagEnd)) {
+            logProcess.setProcessName(getName(data, tagStart, tagEnd));
+        } else {
+            logProcess.setProcessName("TAG");
+        }
+        return true;
+    }
+
+    /**
+     * Returns the decoded name between the given offsets, reusing the name decoded before from the same bytes
+     */
+    private String getName(byte[] data, int start, int end) {
+        int hash = 1;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + data[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (NAME_CACHE_SIZE - 1);
+        byte[] cachedBytes = cachedNameBytes[slot];
+        if (cachedBytes != null && equals(cachedBytes, data, start, end)) {
+            return cachedNames[slot];
+        }
+        byte[] nameBytes = new byte[end - start];
+        System.arraycopy(data, start, nameBytes, 0, nameBytes.length);
+        String name = LineScanner.decode(data, start, end);
+        cachedNameBytes[slot] = nameBytes;
+        cachedNames[slot] = name;
+        return name;
+    }
+
+    private static boolean equals(byte[] bytes, byte[] data, int start, int end) {
+        if (bytes.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != data[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isUnknown(byte[] data, int start, int end) {
+        return end - start == 1 && data[start] == '?';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isDigits(byte[] data, int start, int count) {
+        for (int i = start; i < start + count; i++) {
+            if (!isDigit(data[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int number(byte[] data, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            value = value * 10 + data[i] - '0';
+        }
+        return value;
+    }
+
+    /**
+     * Returns whether the byte is matched by \s of a regular expression
+     */
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0b || b == '\f' || b == '\r';
+    }
+
+    /**
+     * Returns whether a line terminator of a regular expression starts at the given offset,
+     * as "." does not match them
+     */
+    private static boolean isLineTerminator(byte[] data, int i, int end) {
+        byte b = data[i];
+        if (b == '\r' || b == '\n') {
+            return true;
+        }
+        //U+0085, U+2028 and U+2029
+        if ((b & 0xff) == 0xc2) {
+            return i + 1 < end && (data[i + 1] & 0xff) == 0x85;
+        }
+        if ((b & 0xff) == 0xe2) {
+            return i + 2 < end && (data[i + 1] & 0xff) == 0x80 && ((data[i + 2] & 0xff) == 0xa8 || (data[i + 2] & 0xff) == 0xa9);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,258 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import com.josesamuel.logviewer.log.LogProcess;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merges the lines of several logs in to one stream ordered by their timestamp, like the logs of the
+ * files inside an archive. It is a k-way merge using a heap of the next line of each log, and only one
+ * block of each log is kept in memory, so any number of logs of any size can be merged.
+ * Lines without a timestamp stay with the line before them. Lines with the same timestamp keep the order of the logs.
+ */
+class LogTimeMerger {
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final long PROGRESS_INTERVAL = 256 * 1024;
+
+    private final LogFileReader reader;
+    private final List<Source> sources = new ArrayList<>();
+    private long totalBytes;
+    private long bytesRead;
+    private long reportedBytes;
+    private boolean labelLines;
+
+    /**
+     * Initialize with the reader to which the merged lines are delivered
+     */
+    LogTimeMerger(LogFileReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Adds a log to be merged
+     *
+     * @param fileName Name of the file to which the lines belong
+     * @param length   Length of the log, used for the progress
+     * @param opener   Opens the data of the log. All the logs are open at the same time while they are merged.
+     */
+    void add(String fileName, long length, ParallelLineParser.SourceOpener opener) {
+        sources.add(new Source(sources.size(), fileName, opener));
+        totalBytes += length;
+    }
+
+    /**
+     * Sets whether each line with a time is labelled with the name of its log, like "[name]" at the start of the message.
+     * Used when the logs come from different files, whose lines are otherwise not told apart once they are merged.
+     */
+    void setLabelLines(boolean labelLines) {
+        this.labelLines = labelLines;
+    }
+
+    /**
+     * Merges the logs that were added, delivering the lines to the reader
+     */
+    void merge() throws Exception {
+        PriorityQueue<Source> heap = new PriorityQueue<>(Math.max(1, sources.size()),
+                Comparator.comparingLong((Source source) -> source.time).thenComparingInt(source -> source.index));
+        try {
+            for (Source source : sources) {
+                source.open();
+                if (source.nextLine()) {
+                    heap.add(source);
+                }
+            }
+            Source source;
+            while ((source = heap.poll()) != null) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+                //deliver the lines of this log while they are not later than the next line of another log
+                Source next = heap.peek();
+                do {
+                    reader.addLine(source.line, source.logProcess);
+                    if (!source.nextLine()) {
+                        source.close();
+                        source = null;
+                        break;
+                    }
+                } while (next == null || source.time < next.time || (source.time == next.time && source.index < next.index));
+                if (source != null) {
+                    heap.add(source);
+                }
+            }
+        } finally {
+            for (Source source : sources) {
+                source.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the time of a line in the format of {@link com.josesamuel.logviewer.view.AndroidLogcatFormatter}
+     * as a number that orders like the time, or -1 if the line does not start with a time
+     */
+    static long parseTime(CharSequence line) {
+        return parseTime(line, 0);
+    }
+
+    /**
+     * Returns the time of the line starting at the given index of the text, like {@link #parseTime(CharSequence)}
+     */
+    static long parseTime(CharSequence text, int start) {
+        //"MM-dd HH:mm:ss.SSS"
+        if (text.length() - start < 18 || text.charAt(start + 2) != '-' || text.charAt(start + 5) != ' '
+                || text.charAt(start + 8) != ':' || text.charAt(start + 11) != ':' || text.charAt(start + 14) != '.') {
+            return -1;
+        }
+        long time = 0;
+        for (int i = start; i < start + 14; i += 3) {
+            char tens = text.charAt(i);
+            char units = text.charAt(i + 1);
+            if (tens < '0' || tens > '9' || units < '0' || units > '9') {
+                return -1;
+            }
+            time = time * 100 + (tens - '0') * 10 + (units - '0');
+        }
+        int millis = 0;
+        for (int i = start + 15; i < start + 18; i++) {
+            char digit = text.charAt(i);
+            if (digit < '0' || digit > '9') {
+                return -1;
+            }
+            millis = millis * 10 + (digit - '0');
+        }
+        return time * 1000 + millis;
+    }
+
+    private void onRead(int count) {
+        bytesRead += count;
+        if (bytesRead - reportedBytes >= PROGRESS_INTERVAL) {
+            reportedBytes = bytesRead;
+            reader.updateProgress(bytesRead, totalBytes);
+        }
+    }
+
+    /**
+     * A log being merged, with its next line parsed
+     */
+    private final class Source {
+
+        private final int index;
+        private final String fileName;
+        private final String label;
+        private final ParallelLineParser.SourceOpener opener;
+        private final LogLineParser lineParser = new LogLineParser();
+        private final StringBuilder line = new StringBuilder();
+        private InputStream in;
+        private byte[] block;
+        private int position;
+        private int limit;
+        private boolean ended;
+        private final LogProcess logProcess = new LogProcess();
+        private long time;
+
+        private Source(int index, String fileName, ParallelLineParser.SourceOpener opener) {
+            this.index = index;
+            this.fileName = fileName;
+            this.label = "[" + fileName + "]";
+            this.opener = opener;
+        }
+
+        private void open() throws IOException {
+            in = opener.open();
+            block = new byte[BLOCK_SIZE];
+        }
+
+        /**
+         * Parses the next line of the log
+         *
+         * @return false at the end of the log
+         */
+        private boolean nextLine() throws IOException {
+            while (true) {
+                int lineEnd = -1;
+                for (int i = position; i < limit; i++) {
+                    if (block[i] == '\n') {
+                        lineEnd = i;
+                        break;
+                    }
+                }
+                int lineStart = position;
+                if (lineEnd == -1) {
+                    if (!ended) {
+                        readBlock();
+                        continue;
+                    }
+                    if (position == limit) {
+                        return false;
+                    }
+                    lineEnd = limit;
+                }
+                position = Math.min(lineEnd + 1, limit);
+                int end = lineEnd > lineStart && block[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+                line.setLength(0);
+                if (lineParser.parseLine(block, lineStart, end, labelLines ? null : fileName, LogFileReader.reset(logProcess), line)) {
+                    line.setLength(line.length() - 1);
+                    long lineTime = parseTime(line);
+                    if (lineTime >= 0) {
+                        time = lineTime;
+                        if (labelLines) {
+                            addLabel();
+                        }
+                    }
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Inserts the name of the log after the tag of the line
+         */
+        private void addLabel() {
+            //the first ": " after the time ends the tag, as the header fields have no spaces in them
+            int tagEnd = line.indexOf(": ", 18);
+            if (tagEnd != -1) {
+                line.insert(tagEnd + 2, label);
+            }
+        }
+
+        /**
+         * Moves the partial line to the start of the block, and reads more of the log after it
+         */
+        private void readBlock() throws IOException {
+            System.arraycopy(block, position, block, 0, limit - position);
+            limit -= position;
+            position = 0;
+            if (limit == block.length) {
+                //the line does not fit in the block
+                block = Arrays.copyOf(block, block.length * 2);
+            }
+            int read = in.read(block, limit, block.length - limit);
+            if (read == -1) {
+                ended = true;
+            } else {
+                limit += read;
+                onRead(read);
+            }
+        }
+
+        private void close() {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+                in = null;
+                block = null;
+            }
+        }
+    }
+}
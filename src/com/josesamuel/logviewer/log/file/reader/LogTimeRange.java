@@ -0,0 +1,153 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A window of time of the lines to load from a file.
+ * It is given either as a start and an end, like "10:02:00 - 10:07:30" or "03-14 10:02 - 03-14 10:07",
+ * or as a time with the minutes around it, like "10:05:00 +-5", "10:05:00 -10" (before) or "10:05:00 +2" (after).
+ * A time without a date is on the date of the first line of the file.
+ */
+public class LogTimeRange {
+
+    private static final long MILLIS_PER_MINUTE = 60 * 1000;
+    private static final long MILLIS_PER_DAY = 24 * 60 * MILLIS_PER_MINUTE;
+    private static final String TIME = "((\\d\\d)-(\\d\\d)\\s+)?(\\d{1,2}):(\\d\\d)(:(\\d\\d)(\\.(\\d{1,3}))?)?";
+    private static final Pattern TIME_PATTERN = Pattern.compile(TIME);
+    private static final Pattern START_END_PATTERN = Pattern.compile("\\s*(" + TIME + ")\\s+(-|to)\\s+(" + TIME + ")\\s*");
+    private static final Pattern AROUND_PATTERN = Pattern.compile("\\s*(" + TIME + ")\\s+(\u00b1|\\+-|\\+|-)\\s*(\\d+)\\s*(m|min|minutes?)?\\s*");
+
+    private final String text;
+    private final int startDate;
+    private final long startMillis;
+    private final int endDate;
+    private final long endMillis;
+
+    private LogTimeRange(String text, int startDate, long startMillis, int endDate, long endMillis) {
+        this.text = text;
+        this.startDate = startDate;
+        this.startMillis = startMillis;
+        this.endDate = endDate;
+        this.endMillis = endMillis;
+    }
+
+    /**
+     * Parses a time range
+     *
+     * @throws IllegalArgumentException if the text is not a time range
+     */
+    public static LogTimeRange parse(String text) {
+        Matcher matcher = START_END_PATTERN.matcher(text);
+        if (matcher.matches()) {
+            String[] start = parseTime(matcher.group(1));
+            String[] end = parseTime(matcher.group(12));
+            return new LogTimeRange(text.trim(), date(start), millis(start), date(end), lastMillis(end));
+        }
+        matcher = AROUND_PATTERN.matcher(text);
+        if (matcher.matches()) {
+            String[] time = parseTime(matcher.group(1));
+            String direction = matcher.group(11);
+            long minutes = Long.parseLong(matcher.group(12)) * MILLIS_PER_MINUTE;
+            long millis = millis(time);
+            //the window stays within the day of the time
+            long start = direction.equals("+") ? millis : Math.max(0, millis - minutes);
+            long end = direction.equals("-") ? millis : Math.min(MILLIS_PER_DAY - 1, millis + minutes);
+            return new LogTimeRange(text.trim(), date(time), start, date(time), end);
+        }
+        throw new IllegalArgumentException("Not a time range: " + text);
+    }
+
+    /**
+     * Returns whether the given text is a time range
+     */
+    public static boolean isValid(String text) {
+        try {
+            parse(text);
+            return true;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the start of the range as a time of {@link LogTimeMerger#parseTime(CharSequence)}
+     *
+     * @param firstTime Time of the first line of the file, whose date is used if the range has none
+     */
+    long getStart(long firstTime) {
+        return toTime(startDate, startMillis, firstTime);
+    }
+
+    /**
+     * Returns the end of the range as a time of {@link LogTimeMerger#parseTime(CharSequence)}, included in the range
+     *
+     * @param firstTime Time of the first line of the file, whose date is used if the range has none
+     */
+    long getEnd(long firstTime) {
+        return toTime(endDate, endMillis, firstTime);
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    /**
+     * Returns the groups of the given time: month, day, hours, minutes, seconds, milliseconds, the missing ones null
+     */
+    private static String[] parseTime(String time) {
+        Matcher matcher = TIME_PATTERN.matcher(time);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a time: " + time);
+        }
+        String[] fields = {matcher.group(2), matcher.group(3), matcher.group(4), matcher.group(5), matcher.group(7), matcher.group(9)};
+        if (Integer.parseInt(fields[2]) > 23 || Integer.parseInt(fields[3]) > 59 || (fields[4] != null && Integer.parseInt(fields[4]) > 59)) {
+            throw new IllegalArgumentException("Not a time: " + time);
+        }
+        return fields;
+    }
+
+    /**
+     * Returns the date as MMdd, or -1 if the time has no date
+     */
+    private static int date(String[] time) {
+        return time[0] == null ? -1 : Integer.parseInt(time[0]) * 100 + Integer.parseInt(time[1]);
+    }
+
+    /**
+     * Returns the milliseconds of the day of the time
+     */
+    private static long millis(String[] time) {
+        long millis = (Integer.parseInt(time[2]) * 60L + Integer.parseInt(time[3])) * MILLIS_PER_MINUTE;
+        if (time[4] != null) {
+            millis += Integer.parseInt(time[4]) * 1000L;
+        }
+        if (time[5] != null) {
+            //".5" is half a second
+            String fraction = (time[5] + "00").substring(0, 3);
+            millis += Integer.parseInt(fraction);
+        }
+        return millis;
+    }
+
+    /**
+     * Returns the last millisecond of the day within the precision of the time, so "10:07" ends at 10:07:59.999
+     */
+    private static long lastMillis(String[] time) {
+        if (time[4] == null) {
+            return millis(time) + MILLIS_PER_MINUTE - 1;
+        }
+        return time[5] == null ? millis(time) + 999 : millis(time);
+    }
+
+    private static long toTime(int date, long millis, long firstTime) {
+        if (date < 0) {
+            date = firstTime >= 0 ? (int) (firstTime / 1000000000L) : 0;
+        }
+        long seconds = millis / 1000;
+        long hhmmss = (seconds / 3600) * 10000 + (seconds / 60 % 60) * 100 + seconds % 60;
+        return (date * 1000000L + hhmmss) * 1000 + millis % 1000;
+    }
+}
@@ -0,0 +1,135 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import com.josesamuel.logviewer.log.LogProcess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Finds where the lines of a given time are in a log file, with a binary search on the byte offsets of the file.
+ * The time at an offset is the time of the first line after it that has one, so each step of the search
+ * reads and parses only a few lines, and the search takes about the same time however large the file is.
+ * The lines are expected to be in order of time, like logcat writes them.
+ */
+class LogTimeSearch {
+
+    /**
+     * Margin kept around the part of the file that is found, for the lines slightly out of order at its edges
+     */
+    static final long MARGIN = 256 * 1024;
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int MAX_PROBE_SIZE = 4 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private final LogLineParser lineParser = new LogLineParser();
+    private final StringBuilder line = new StringBuilder();
+    private final LogProcess logProcess = new LogProcess();
+    private final ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+    private long probedLineStart;
+
+    LogTimeSearch(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+    }
+
+    /**
+     * Returns the time of the first line of the file that has one, or -1 if there is none near the start
+     */
+    long getFirstTime() throws IOException {
+        return probe(0);
+    }
+
+    /**
+     * Returns the offset of the first line whose time is not before the given time, or the size of the file
+     */
+    long findOffset(long time) throws IOException {
+        long low = 0;
+        long high = size;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            long middleTime = probe(middle);
+            if (middleTime == -1 || middleTime >= time) {
+                high = middle;
+            } else {
+                //the lines up to the one probed are all before the time
+                low = probedLineStart + 1;
+            }
+        }
+        return nextLineStart(low);
+    }
+
+    /**
+     * Returns the start of the first line that starts at or after the given offset, or the size of the file
+     */
+    long nextLineStart(long offset) throws IOException {
+        if (offset <= 0) {
+            return 0;
+        }
+        long position = offset - 1;
+        while (position < size) {
+            int length = read(position, BLOCK_SIZE);
+            byte[] data = buffer.array();
+            for (int i = 0; i < length; i++) {
+                if (data[i] == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += length;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the time of the first line with a time that starts at or after the given offset,
+     * or -1 if there is none within {@link #MAX_PROBE_SIZE}. The start of the line is kept in {@link #probedLineStart}.
+     */
+    private long probe(long offset) throws IOException {
+        long position = nextLineStart(offset);
+        long limit = Math.min(size, position + MAX_PROBE_SIZE);
+        while (position < limit) {
+            int length = read(position, (int) Math.min(BLOCK_SIZE, limit - position));
+            byte[] data = buffer.array();
+            int lineStart = 0;
+            for (int i = 0; i < length; i++) {
+                boolean lastLine = position + i + 1 == size;
+                if (data[i] == '\n' || lastLine) {
+                    long time = parseTime(data, lineStart, data[i] == '\n' ? i : i + 1);
+                    if (time >= 0) {
+                        probedLineStart = position + lineStart;
+                        return time;
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            //continue from the line that did not fit, or after it if it is longer than the block
+            position = lineStart > 0 ? position + lineStart : nextLineStart(position + length);
+        }
+        probedLineStart = size;
+        return -1;
+    }
+
+    private long parseTime(byte[] data, int start, int end) {
+        if (end > start && data[end - 1] == '\r') {
+            end--;
+        }
+        line.setLength(0);
+        if (!lineParser.parseLine(data, start, end, null, logProcess, line)) {
+            return -1;
+        }
+        return LogTimeMerger.parseTime(line);
+    }
+
+    /**
+     * Reads up to the given number of bytes at the given position in to the buffer, returns the number of bytes read
+     */
+    private int read(long position, int length) throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) ;
+        return buffer.position();
+    }
+}
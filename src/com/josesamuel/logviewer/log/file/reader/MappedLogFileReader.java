@@ -0,0 +1,29 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import com.josesamuel.logviewer.log.LogLines;
+
+import java.io.File;
+
+/**
+ * Reader for large plain log files.
+ * The file is memory mapped and only an index of line offsets is kept in memory.
+ */
+class MappedLogFileReader extends LogFileReader {
+
+
+    MappedLogFileReader(File file) {
+        super(file);
+    }
+
+    @Override
+    public LogLines getFileLines(LogFileReaderListener listener) throws Exception {
+        if (getTimeRange() != null || isNewestFirst()) {
+            //the file is not read from the start
+            return null;
+        }
+        MappedLogLines logLines = new MappedLogLines(getFile(), getProcesses(), listener);
+        setReadLength(logLines.getFileSize());
+        return logLines;
+    }
+}
@@ -0,0 +1,312 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import com.josesamuel.logviewer.log.LogLines;
+import com.josesamuel.logviewer.log.LogProcess;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link LogLines} backed by a memory mapped file.
+ * Only the start offset of each non empty line is kept in memory, the lines are decoded on demand.
+ * The index is built in parallel by splitting the file in to chunks at line breaks.
+ * This keeps the file itself off the heap while it is indexed and cached, but the console still prints every line that
+ * passes the filters in to its document, so the text of the shown lines is still on the heap once they are shown.
+ */
+class MappedLogLines implements LogLines, Closeable {
+
+    private static final int SEGMENT_SIZE = 1 << 30;
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    private static final long CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final ThreadLocal<LogLineParser> lineParsers = ThreadLocal.withInitial(LogLineParser::new);
+
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long fileSize;
+    private final LogFileReader.LogFileReaderListener listener;
+    private final AtomicLong indexedBytes = new AtomicLong();
+    private final boolean parsed;
+    private long[] lineOffsets;
+    private int lineCount;
+
+    /**
+     * Maps the given file, and indexes its lines
+     *
+     * @param processes Set to which the processes found in the lines are added
+     * @param listener  Listener that is notified about the indexing progress
+     */
+    MappedLogLines(File file, Set<LogProcess> processes, LogFileReader.LogFileReaderListener listener) throws IOException {
+        this(file, null, false, listener);
+        try {
+            buildIndex(processes);
+        } catch (RuntimeException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Maps the given file, using the given index of its lines
+     *
+     * @param lineOffsets Start offset of each line
+     * @param parsed      Whether the lines are already in the format of {@link com.josesamuel.logviewer.view.AndroidLogcatFormatter}
+     */
+    MappedLogLines(File file, long[] lineOffsets, boolean parsed) throws IOException {
+        this(file, lineOffsets, parsed, null);
+    }
+
+    private MappedLogLines(File file, long[] lineOffsets, boolean parsed, LogFileReader.LogFileReaderListener listener) throws IOException {
+        this.listener = listener;
+        this.parsed = parsed;
+        if (lineOffsets != null) {
+            this.lineOffsets = lineOffsets;
+            this.lineCount = lineOffsets.length;
+        }
+        randomAccessFile = new RandomAccessFile(file, "r");
+        channel = randomAccessFile.getChannel();
+        fileSize = channel.size();
+        int segmentCount = (int) ((fileSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        segments = new MappedByteBuffer[segmentCount];
+        try {
+            for (int i = 0; i < segmentCount; i++) {
+                long position = (long) i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, fileSize - position));
+            }
+        } catch (IOException | RuntimeException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public int size() {
+        return lineCount;
+    }
+
+    @Override
+    public String getLine(int index) {
+        byte[] bytes = readLine(lineOffsets[index]);
+        if (parsed) {
+            return LineScanner.decode(bytes, 0, bytes.length);
+        }
+        StringBuilder parsedLine = new StringBuilder(bytes.length + 1);
+        lineParsers.get().parseLine(bytes, 0, bytes.length, null, new LogProcess(), parsedLine);
+        //without the line break the parser ends it with
+        return parsedLine.length() > 0 ? parsedLine.substring(0, parsedLine.length() - 1) : "";
+    }
+
+    /**
+     * Returns the start offset of each line
+     */
+    long[] getLineOffsets() {
+        return lineOffsets;
+    }
+
+    /**
+     * Returns the size of the file that was mapped
+     */
+    long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Closes the file, and drops the mappings so that they are unmapped once they are collected.
+     * The lines can not be read after this.
+     */
+    @Override
+    public void close() throws IOException {
+        lineCount = 0;
+        Arrays.fill(segments, null);
+        channel.close();
+        randomAccessFile.close();
+    }
+
+    /**
+     * Indexes the chunks of the file in parallel, and merges them in file order
+     */
+    private void buildIndex(Set<LogProcess> processes) {
+        List<IndexChunk> chunks;
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            chunks = pool.invoke(new IndexTask(0, fileSize));
+        } finally {
+            pool.shutdown();
+        }
+        for (IndexChunk chunk : chunks) {
+            lineCount += chunk.lineCount;
+        }
+        lineOffsets = new long[lineCount];
+        int position = 0;
+        for (IndexChunk chunk : chunks) {
+            System.arraycopy(chunk.lineOffsets, 0, lineOffsets, position, chunk.lineCount);
+            position += chunk.lineCount;
+            processes.addAll(chunk.processes);
+        }
+    }
+
+    /**
+     * Scans the given range for line breaks, recording the start of each non empty line.
+     * The range should start at the start of a line, and end at the end of a line.
+     */
+    private IndexChunk indexRange(long start, long end) {
+        if (listener != null && listener.isCancelled()) {
+            throw new CancellationException();
+        }
+        IndexChunk chunk = new IndexChunk();
+        long lineStart = start;
+        long position = start;
+        while (position < end) {
+            MappedByteBuffer segment = segments[(int) (position / SEGMENT_SIZE)];
+            long segmentStart = position - position % SEGMENT_SIZE;
+            int limit = (int) Math.min(segment.limit(), end - segmentStart);
+            for (int i = (int) (position - segmentStart); i < limit; i++) {
+                if (segment.get(i) == '\n') {
+                    long lineEnd = segmentStart + i;
+                    chunk.addLine(lineStart, lineEnd);
+                    lineStart = lineEnd + 1;
+                }
+            }
+            position = segmentStart + limit;
+        }
+        if (lineStart < end) {
+            chunk.addLine(lineStart, end);
+        }
+        if (listener != null) {
+            listener.onProgress(indexedBytes.addAndGet(end - start), fileSize);
+        }
+        return chunk;
+    }
+
+    /**
+     * Returns the start of the line following the given position
+     */
+    private long nextLineStart(long position) {
+        while (position < fileSize && byteAt(position) != '\n') {
+            position++;
+        }
+        return Math.min(position + 1, fileSize);
+    }
+
+    /**
+     * Reads the bytes of the line starting at the given offset, without any trailing carriage return
+     */
+    private byte[] readLine(long lineStart) {
+        long lineEnd = lineStart;
+        while (lineEnd < fileSize && byteAt(lineEnd) != '\n') {
+            lineEnd++;
+        }
+        byte[] bytes = new byte[(int) (lineEnd - lineStart)];
+        int length = copyLine(lineStart, lineEnd, bytes);
+        return length < bytes.length ? Arrays.copyOf(bytes, length) : bytes;
+    }
+
+    /**
+     * Copies the bytes between the given offsets in to the given array, ignoring any trailing carriage return
+     *
+     * @return the number of bytes copied
+     */
+    private int copyLine(long start, long end, byte[] bytes) {
+        if (end > start && byteAt(end - 1) == '\r') {
+            end--;
+        }
+        int lineLength = (int) (end - start);
+        int copied = 0;
+        while (copied < lineLength) {
+            long position = start + copied;
+            ByteBuffer segment = segments[(int) (position / SEGMENT_SIZE)].duplicate();
+            segment.position((int) (position % SEGMENT_SIZE));
+            int length = Math.min(lineLength - copied, segment.remaining());
+            segment.get(bytes, copied, length);
+            copied += length;
+        }
+        return lineLength;
+    }
+
+    private byte byteAt(long position) {
+        return segments[(int) (position / SEGMENT_SIZE)].get((int) (position % SEGMENT_SIZE));
+    }
+
+    /**
+     * Task that indexes a range of the file, splitting it at a line break if it is large
+     */
+    private final class IndexTask extends RecursiveTask<List<IndexChunk>> {
+
+        private final long start;
+        private final long end;
+
+        IndexTask(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected List<IndexChunk> compute() {
+            if (end - start > CHUNK_SIZE) {
+                long split = nextLineStart(start + (end - start) / 2);
+                if (split < end) {
+                    IndexTask right = new IndexTask(split, end);
+                    right.fork();
+                    List<IndexChunk> chunks = new IndexTask(start, split).compute();
+                    chunks.addAll(right.join());
+                    return chunks;
+                }
+            }
+            List<IndexChunk> chunks = new ArrayList<>();
+            chunks.add(indexRange(start, end));
+            return chunks;
+        }
+    }
+
+    /**
+     * Index of the lines, and the processes found in one chunk of the file
+     */
+    private final class IndexChunk {
+
+        private final Set<LogProcess> processes = new HashSet<>();
+        private final LogLineParser lineParser = new LogLineParser();
+        private final StringBuilder parsedLine = new StringBuilder();
+        private final LogProcess logProcess = new LogProcess();
+        private byte[] lineBytes = new byte[INITIAL_CAPACITY];
+        private long[] lineOffsets = new long[INITIAL_CAPACITY];
+        private int lineCount;
+
+        /**
+         * Adds the line between the given offsets to the index if it has any content
+         */
+        private void addLine(long lineStart, long lineEnd) {
+            if (lineEnd - lineStart == 0 || (lineEnd - lineStart == 1 && byteAt(lineStart) == '\r')) {
+                return;
+            }
+            if (lineEnd - lineStart > lineBytes.length) {
+                lineBytes = new byte[(int) (lineEnd - lineStart)];
+            }
+            int length = copyLine(lineStart, lineEnd, lineBytes);
+            parsedLine.setLength(0);
+            if (lineParser.parseLine(lineBytes, 0, length, null, LogFileReader.reset(logProcess), parsedLine)) {
+                if (lineCount == lineOffsets.length) {
+                    lineOffsets = Arrays.copyOf(lineOffsets, lineCount * 2);
+                }
+                lineOffsets[lineCount++] = lineStart;
+                if (!processes.contains(logProcess)) {
+                    processes.add(LogFileReader.copy(logProcess));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import com.josesamuel.logviewer.log.LogLines;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reader for several files that are shown as one log.
+ * The files are read at the same time on a bounded pool, each by its own reader, so loading them takes
+ * about as long as loading the largest of them. Their lines are then merged by time using the {@link LogTimeMerger},
+ * and each line is labelled with the name of the file it came from.
+ */
+class MultiFileLogReader extends LogFileReader {
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private final List<File> files;
+    private final long[] bytesRead;
+    private final long[] totalBytes;
+    private boolean mergeEntriesByTime;
+
+    /**
+     * Initialize with the given files, which are listed in the order their lines are kept when the times are equal
+     */
+    MultiFileLogReader(List<File> files) {
+        super(files.get(0));
+        this.files = new ArrayList<>(files);
+        this.bytesRead = new long[files.size()];
+        this.totalBytes = new long[files.size()];
+    }
+
+    @Override
+    public void readFileData(LogFileReaderListener listener) throws Exception {
+        startBatches(listener);
+        int workerCount = Math.min(files.size(), Math.max(1, Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "LogViewer file reader " + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<ParsedFile> parsedFiles = new ArrayList<>();
+        try {
+            List<Future<ParsedFile>> results = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                int index = i;
+                results.add(executor.submit(() -> readFile(index)));
+            }
+            LogTimeMerger merger = new LogTimeMerger(this);
+            merger.setLabelLines(true);
+            for (Future<ParsedFile> result : results) {
+                ParsedFile parsedFile;
+                try {
+                    parsedFile = result.get();
+                } catch (ExecutionException ex) {
+                    throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+                }
+                parsedFiles.add(parsedFile);
+                getProcesses().addAll(parsedFile.reader.getProcesses());
+                merger.add(parsedFile.name, parsedFile.length, parsedFile::open);
+            }
+            merger.merge();
+            flushBatch();
+        } finally {
+            executor.shutdownNow();
+            for (ParsedFile parsedFile : parsedFiles) {
+                parsedFile.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the file at the given index with its own reader
+     */
+    private ParsedFile readFile(int index) throws Exception {
+        File file = files.get(index);
+        LogFileReader reader = LogFileReaderFactory.getFileReader(file);
+        reader.setMergeByTime(mergeEntriesByTime);
+        ParsedFile parsedFile = new ParsedFile(file.getName(), reader);
+        LogFileReaderListener readerListener = new LogFileReaderListener() {
+            @Override
+            public void onLogData(String logData) {
+                byte[] data = logData.getBytes(StandardCharsets.UTF_8);
+                parsedFile.data.write(data, 0, data.length);
+            }
+
+            @Override
+            public void onProgress(long read, long total) {
+                onFileProgress(index, read, total);
+            }
+
+            @Override
+            public List<LogFileSection> onSelectSections(List<LogFileSection> sections) {
+                return getListener().onSelectSections(sections);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return getListener().isCancelled();
+            }
+        };
+        parsedFile.lines = reader.getFileLines(readerListener);
+        if (parsedFile.lines == null) {
+            reader.readFileData(readerListener);
+            parsedFile.length = parsedFile.data.size();
+        } else {
+            parsedFile.length = file.length();
+        }
+        onFileProgress(index, 1, 1);
+        return parsedFile;
+    }
+
+    /**
+     * Reports the progress of reading all the files as the first half of the progress.
+     * Each file counts with its size on disk, as the readers report the progress in their own units.
+     */
+    private synchronized void onFileProgress(int index, long read, long total) {
+        bytesRead[index] = read;
+        totalBytes[index] = total;
+        double progress = 0;
+        long size = 0;
+        for (int i = 0; i < files.size(); i++) {
+            long fileSize = Math.max(1, files.get(i).length());
+            if (totalBytes[i] > 0) {
+                progress += fileSize * Math.min(1.0, (double) bytesRead[i] / totalBytes[i]);
+            }
+            size += fileSize;
+        }
+        super.updateProgress((long) progress, size * 2);
+    }
+
+    /**
+     * Reports the progress of the merge as the second half of the progress
+     */
+    @Override
+    void updateProgress(long bytesRead, long totalBytes) {
+        super.updateProgress(totalBytes + bytesRead, totalBytes * 2);
+    }
+
+    @Override
+    public void setMergeByTime(boolean mergeByTime) {
+        super.setMergeByTime(mergeByTime);
+        //applies to the archives among the files
+        this.mergeEntriesByTime = mergeByTime;
+    }
+
+    @Override
+    public boolean canFollow() {
+        return false;
+    }
+
+    @Override
+    public boolean canReadTimeRange() {
+        return false;
+    }
+
+    /**
+     * The parsed lines of one of the files
+     */
+    private static final class ParsedFile implements Closeable {
+
+        private final String name;
+        private final LogFileReader reader;
+        private final ParsedData data = new ParsedData();
+        private LogLines lines;
+        private long length;
+
+        private ParsedFile(String name, LogFileReader reader) {
+            this.name = name;
+            this.reader = reader;
+        }
+
+        private InputStream open() {
+            if (lines != null) {
+                return new LinesInputStream(lines);
+            }
+            return data.open();
+        }
+
+        @Override
+        public void close() {
+            if (lines instanceof Closeable) {
+                try {
+                    ((Closeable) lines).close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Parsed lines kept in memory as UTF-8
+     */
+    private static final class ParsedData extends ByteArrayOutputStream {
+
+        private ParsedData() {
+            super(64 * 1024);
+        }
+
+        private InputStream open() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+
+    /**
+     * Stream of the lines of a {@link LogLines}, encoded one line at a time, so that mapped files are not copied
+     */
+    private static final class LinesInputStream extends InputStream {
+
+        private final LogLines lines;
+        private int lineIndex;
+        private byte[] line = new byte[0];
+        private int position;
+
+        private LinesInputStream(LogLines lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public int read() {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            while (position == line.length) {
+                if (lineIndex == lines.size()) {
+                    return -1;
+                }
+                line = (lines.getLine(lineIndex++) + '\n').getBytes(StandardCharsets.UTF_8);
+                position = 0;
+            }
+            int count = Math.min(len, line.length - position);
+            System.arraycopy(line, position, b, off, count);
+            position += count;
+            return count;
+        }
+    }
+}
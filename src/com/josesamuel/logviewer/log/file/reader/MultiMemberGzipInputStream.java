@@ -0,0 +1,241 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stream of the decompressed data of a gzip file, which inflates its members in parallel.
+ * Files written by bgzip, or rotated logs that were concatenated, are made of several gzip members.
+ * The file is scanned ahead for member headers, and each of them is inflated on a worker thread.
+ * A header found in the compressed data by chance is dropped, as it does not start where the member
+ * before it ends, so the data is read in order exactly as {@link java.util.zip.GZIPInputStream} would.
+ */
+class MultiMemberGzipInputStream extends InputStream {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int CHUNKS_PER_MEMBER = 4;
+    private static final int SCAN_SIZE = 1024 * 1024;
+    private static final byte[] LAST_CHUNK = new byte[0];
+
+    private final FileChannel channel;
+    private final long fileLength;
+    private final LogFileReader.LogFileReaderListener listener;
+    private final int workerCount;
+    private final ExecutorService executor;
+    private final Deque<Member> pendingMembers = new ArrayDeque<>();
+    private final ByteBuffer scanBuffer = ByteBuffer.allocate(SCAN_SIZE + 3);
+    private long scanPosition;
+    private long memberStart;
+    private Member member;
+    private byte[] chunk;
+    private int chunkPosition;
+    private int memberCount;
+
+    /**
+     * Opens the given gzip file
+     *
+     * @param listener Listener that is notified about the progress as the members are read, or null
+     */
+    MultiMemberGzipInputStream(File file, LogFileReader.LogFileReaderListener listener) throws IOException {
+        this.listener = listener;
+        this.fileLength = file.length();
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.workerCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        this.executor = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "LogViewer gzip " + file.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the number of members read so far
+     */
+    int getMemberCount() {
+        return memberCount;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        scanMembers();
+        while (chunk == null || chunkPosition == chunk.length) {
+            if (!nextChunk()) {
+                return -1;
+            }
+        }
+        int count = Math.min(len, chunk.length - chunkPosition);
+        System.arraycopy(chunk, chunkPosition, b, off, count);
+        chunkPosition += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        channel.close();
+    }
+
+    /**
+     * Moves to the next chunk of the current member, or to the next member
+     *
+     * @return false at the end of the data
+     */
+    private boolean nextChunk() throws IOException {
+        chunkPosition = 0;
+        chunk = null;
+        if (member != null) {
+            try {
+                chunk = member.chunks.take();
+            } catch (InterruptedException ex) {
+                throw new InterruptedIOException();
+            }
+            if (chunk != LAST_CHUNK) {
+                return true;
+            }
+            if (member.error != null) {
+                throw member.error;
+            }
+            memberStart = member.stream.getEnd();
+            memberCount++;
+            member = null;
+            if (listener != null) {
+                listener.onProgress(memberStart, fileLength);
+            }
+        }
+        //drop the headers that were found inside the compressed data of the member
+        while (true) {
+            while (pendingMembers.isEmpty() && scanPosition < fileLength) {
+                scanMembers();
+            }
+            Member pendingMember = pendingMembers.peek();
+            if (pendingMember == null || pendingMember.start > memberStart) {
+                //end of file, or trailing data that is not a gzip member
+                return false;
+            }
+            pendingMembers.poll();
+            if (pendingMember.start == memberStart) {
+                member = pendingMember;
+                return true;
+            }
+            pendingMember.cancelled = true;
+        }
+    }
+
+    /**
+     * Scans the next part of the file for member headers, unless enough members are pending
+     */
+    private void scanMembers() throws IOException {
+        if (pendingMembers.size() >= workerCount * 2 || scanPosition >= fileLength) {
+            return;
+        }
+        scanBuffer.clear();
+        while (scanBuffer.hasRemaining() && channel.read(scanBuffer, scanPosition + scanBuffer.position()) > 0) ;
+        int length = scanBuffer.position();
+        byte[] data = scanBuffer.array();
+        int scanLength = Math.min(length, SCAN_SIZE);
+        for (int i = 0; i < scanLength; i++) {
+            if ((data[i] & 0xff) == 0x1f && i + 3 < length && (data[i + 1] & 0xff) == 0x8b && data[i + 2] == 8
+                    && (data[i + 3] & 0xe0) == 0) {
+                long start = scanPosition + i;
+                if (start >= memberStart) {
+                    Member pendingMember = new Member(start);
+                    executor.execute(pendingMember);
+                    pendingMembers.add(pendingMember);
+                }
+            }
+        }
+        scanPosition += scanLength;
+        if (length < 4) {
+            scanPosition = fileLength;
+        }
+    }
+
+    /**
+     * A member that is inflated on a worker thread, handing over its data in chunks.
+     * The worker is not interrupted when the member is dropped, as that would close the shared channel.
+     */
+    private final class Member implements Runnable {
+
+        private final long start;
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(CHUNKS_PER_MEMBER);
+        private GzipMemberInputStream stream;
+        private IOException error;
+        private volatile boolean cancelled;
+
+        private Member(long start) {
+            this.start = start;
+        }
+
+        @Override
+        public void run() {
+            try {
+                stream = new GzipMemberInputStream(channel, start);
+                byte[] data = new byte[CHUNK_SIZE];
+                int length = 0;
+                int read;
+                while ((read = stream.read(data, length, data.length - length)) != -1) {
+                    length += read;
+                    if (length == data.length) {
+                        if (!put(data)) {
+                            return;
+                        }
+                        data = new byte[CHUNK_SIZE];
+                        length = 0;
+                    }
+                }
+                if (length > 0 && !put(Arrays.copyOf(data, length))) {
+                    return;
+                }
+            } catch (InterruptedException ex) {
+                return;
+            } catch (IOException ex) {
+                error = ex;
+            } finally {
+                if (stream != null) {
+                    stream.close();
+                }
+            }
+            try {
+                put(LAST_CHUNK);
+            } catch (InterruptedException ignored) {
+            }
+        }
+
+        /**
+         * Hands over the given chunk, waiting while the chunks before it are not taken
+         *
+         * @return false if the member was dropped
+         */
+        private boolean put(byte[] chunk) throws InterruptedException {
+            while (!cancelled) {
+                if (chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import org.xeustechnologies.jtar.TarEntry;
+import org.xeustechnologies.jtar.TarInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Submits the entries of an archive to a {@link ParallelLineParser}, streaming in to the archives found inside it.
+ * A zip inside a tgz, or a tar inside a zip, is read as it is decompressed without extracting it to a file.
+ * The lines of each log are tagged with the full path of the entry, like "ci.zip!/bugreport.tgz!/FS/data/log.txt".
+ */
+class NestedArchiveParser {
+
+    static final String PATH_SEPARATOR = "!/";
+
+    private static final int MAX_DEPTH = 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ParallelLineParser parser;
+
+    NestedArchiveParser(ParallelLineParser parser) {
+        this.parser = parser;
+    }
+
+    /**
+     * Returns whether the given first bytes of an entry are of an archive
+     */
+    static boolean isArchive(byte[] header, int length) {
+        return ArchiveFormat.detect(header, length) != ArchiveFormat.PLAIN;
+    }
+
+    /**
+     * Returns the name of the given tar entry without the leading "./"
+     */
+    static String getEntryName(TarEntry entry) {
+        String name = entry.getName();
+        return name.startsWith("./") ? name.substring(2) : name;
+    }
+
+    /**
+     * Reads the given entry to its end. The lines of a log are submitted to be parsed,
+     * and the entries of an archive are submitted in turn.
+     *
+     * @param path Full path of the entry
+     * @param in   Data of the entry. It is not closed.
+     */
+    void submitEntry(String path, InputStream in) throws Exception {
+        submitEntry(path, in, 0);
+    }
+
+    private void submitEntry(String path, InputStream in, int depth) throws Exception {
+        BufferedInputStream entry = new BufferedInputStream(new NonClosingInputStream(in), BUFFER_SIZE);
+        entry.mark(ArchiveFormat.HEADER_SIZE);
+        byte[] header = new byte[ArchiveFormat.HEADER_SIZE];
+        int length = ArchiveFormat.readHeader(entry, header);
+        entry.reset();
+        ArchiveFormat format = ArchiveFormat.detect(header, length);
+        if (format != ArchiveFormat.PLAIN && depth >= MAX_DEPTH) {
+            //too deep, likely not logs
+            return;
+        }
+        switch (format) {
+            case ZIP:
+                try (ZipInputStream zis = new ZipInputStream(entry)) {
+                    ZipEntry zipEntry;
+                    while ((zipEntry = zis.getNextEntry()) != null) {
+                        if (!zipEntry.isDirectory()) {
+                            submitEntry(path + PATH_SEPARATOR + zipEntry.getName(), zis, depth + 1);
+                        }
+                    }
+                }
+                break;
+            case TAR:
+                try (TarInputStream tis = new TarInputStream(entry)) {
+                    TarEntry tarEntry;
+                    while ((tarEntry = tis.getNextEntry()) != null) {
+                        if (!tarEntry.isDirectory()) {
+                            submitEntry(path + PATH_SEPARATOR + getEntryName(tarEntry), tis, depth + 1);
+                        }
+                    }
+                }
+                break;
+            case GZIP:
+                try (InputStream gis = new GZIPInputStream(entry, BUFFER_SIZE)) {
+                    submitEntry(path, gis, depth + 1);
+                }
+                break;
+            default:
+                parser.submitStream(path, entry);
+                break;
+        }
+    }
+
+    /**
+     * Stream that leaves the underlying stream open, so that the outer archive can move on to its next entry
+     */
+    private static final class NonClosingInputStream extends FilterInputStream {
+
+        private NonClosingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import com.josesamuel.logviewer.log.LogProcess;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a plain log file newest first, so that the end of a large capture is shown right away.
+ * The last {@link #TAIL_LINES} lines are found by scanning backwards from the end of the file, and are delivered first.
+ * The older lines are then read backwards in large blocks, so the most recent history is read first
+ * and is kept if the read is cancelled. Each block is handed to the listener as soon as it is read,
+ * with {@link LogFileReader.LogFileReaderListener#onOlderLogData(String)}, as lines that go before all the lines given so far.
+ */
+class NewestFirstReader {
+
+    static final int TAIL_LINES = 5000;
+
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final int MAX_BLOCK_SIZE = 64 * 1024 * 1024;
+
+    private final LogFileReader reader;
+
+    NewestFirstReader(LogFileReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Delivers the last lines of the file to the listener of the reader, then reads the older lines backwards
+     */
+    void read() throws Exception {
+        try (FileChannel channel = FileChannel.open(reader.getFile().toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            reader.setReadLength(size);
+            long tailStart = findTailStart(channel, size);
+            try (InputStream in = new FileSliceInputStream(channel, tailStart, size - tailStart)) {
+                reader.readFileData(in, null);
+            }
+            reader.flushBatch();
+            long end = tailStart;
+            while (end > 0) {
+                reader.updateProgress(size - end, size);
+                end = readBlockBefore(channel, end);
+            }
+        }
+    }
+
+    /**
+     * Returns the start of the last {@link #TAIL_LINES} lines of the file
+     */
+    private static long findTailStart(FileChannel channel, long size) throws IOException {
+        int lines = 0;
+        long end = size;
+        while (end > 0) {
+            long start = Math.max(0, end - BLOCK_SIZE);
+            byte[] data = read(channel, start, (int) (end - start));
+            for (int i = data.length - 1; i >= 0; i--) {
+                //each line break ends a line, except the one at the end of the file
+                if (data[i] == '\n' && start + i != size - 1 && ++lines == TAIL_LINES) {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    /**
+     * Reads the whole lines of the block before the given line start, returns the start of the first line read.
+     * A block grows until it holds a line break, up to {@link #MAX_BLOCK_SIZE}. Past that the part of the long line
+     * that was read is delivered as a line of its own, and the rest of it is read with the next block.
+     */
+    private long readBlockBefore(FileChannel channel, long end) throws Exception {
+        long blockSize = BLOCK_SIZE;
+        while (true) {
+            long start = Math.max(0, end - blockSize);
+            byte[] data = read(channel, start, (int) (end - start));
+            int firstLine = 0;
+            if (start > 0) {
+                //the line cut by the start of the block is read with the next block.
+                //A line break in the last byte only ends the block, it does not start a line in it.
+                int lastByte = data.length - 1;
+                while (firstLine < lastByte && data[firstLine] != '\n') {
+                    firstLine++;
+                }
+                if (firstLine < lastByte) {
+                    firstLine++;
+                } else if (blockSize < MAX_BLOCK_SIZE) {
+                    blockSize *= 2;
+                    continue;
+                } else {
+                    firstLine = 0;
+                }
+            }
+            reader.addOlderData(parseBlock(data, firstLine));
+            return start + firstLine;
+        }
+    }
+
+    /**
+     * Parses the lines of the block from the given start, returns them in the format of the batches
+     */
+    private String parseBlock(byte[] data, int start) throws Exception {
+        LogLineParser lineParser = new LogLineParser();
+        StringBuilder text = new StringBuilder(data.length - start);
+        LogProcess logProcess = new LogProcess();
+        new LineScanner().scan(new ByteArrayInputStream(data, start, data.length - start), (line, lineStart, lineEnd) -> {
+            if (lineParser.parseLine(line, lineStart, lineEnd, null, LogFileReader.reset(logProcess), text)) {
+                reader.addProcess(logProcess);
+            }
+        });
+        return text.toString();
+    }
+
+    private static byte[] read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) ;
+        return buffer.array();
+    }
+}
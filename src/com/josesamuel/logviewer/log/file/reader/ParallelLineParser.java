@@ -0,0 +1,283 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import com.josesamuel.logviewer.log.LogProcess;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses the log lines of several sources on a bounded pool of worker threads.
+ * The parsed lines are delivered to the {@link LogFileReader} in the order the sources were submitted.
+ * Only a few sources are parsed at a time, and each of them buffers only a few chunks of parsed lines,
+ * so the memory used depends on the pool size rather than on the size of the data.
+ */
+class ParallelLineParser {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final int CHUNKS_PER_SOURCE = 4;
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private final LogFileReader reader;
+    private final int workerCount;
+    private final BlockingQueue<ParsedSource> pendingSources;
+    private ExecutorService executor;
+    private final ThreadLocal<LineScanner> lineScanners = ThreadLocal.withInitial(LineScanner::new);
+    private final ThreadLocal<LogLineParser> lineParsers = ThreadLocal.withInitial(LogLineParser::new);
+    private volatile boolean stopped;
+
+    /**
+     * Initialize with the reader to which the parsed lines are delivered
+     */
+    ParallelLineParser(LogFileReader reader) {
+        this.reader = reader;
+        this.workerCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        this.pendingSources = new ArrayBlockingQueue<>(workerCount * 2);
+    }
+
+    /**
+     * Runs the given producer on its own thread, parsing the sources it submits in parallel.
+     * The parsed lines are delivered on the calling thread, and this returns once all of them are delivered.
+     * If the delivery fails or is cancelled, the producer is stopped, and this returns once it has finished,
+     * so the caller can close the streams the producer reads from.
+     */
+    void parse(SourceProducer producer) throws Exception {
+        executor = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "LogViewer parser " + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ParsedSource lastSource = new ParsedSource(null, null, null);
+        Exception[] producerError = new Exception[1];
+        Thread producerThread = new Thread(() -> {
+            try {
+                producer.produce(this);
+            } catch (Exception ex) {
+                producerError[0] = ex;
+            } finally {
+                //once stopped, nothing takes from the queue any more
+                try {
+                    while (!stopped && !pendingSources.offer(lastSource, 100, TimeUnit.MILLISECONDS)) {
+                    }
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }, "LogViewer reader " + threadCount.incrementAndGet());
+        producerThread.setDaemon(true);
+        producerThread.start();
+        try {
+            ParsedSource source;
+            while ((source = pendingSources.take()) != lastSource) {
+                source.deliver();
+            }
+            producerThread.join();
+            if (producerError[0] != null) {
+                throw producerError[0];
+            }
+        } finally {
+            stopped = true;
+            executor.shutdownNow();
+            pendingSources.clear();
+            producerThread.interrupt();
+            boolean interrupted = false;
+            while (producerThread.isAlive()) {
+                try {
+                    producerThread.join();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Submits the given source to be parsed. Blocks if too many sources are waiting to be delivered.
+     *
+     * @param fileName Name of the file to which the lines belong, or null
+     * @param opener   Opens the data of the source. Called on a worker thread.
+     */
+    void submit(String fileName, SourceOpener opener) throws InterruptedException {
+        submit(fileName, opener, null);
+    }
+
+    /**
+     * Submits the given source to be parsed. Blocks if too many sources are waiting to be delivered.
+     *
+     * @param fileName    Name of the file to which the lines belong, or null
+     * @param opener      Opens the data of the source. Called on a worker thread.
+     * @param onDelivered Called after all the lines of the source are delivered, or null
+     */
+    void submit(String fileName, SourceOpener opener, Runnable onDelivered) throws InterruptedException {
+        if (stopped) {
+            throw new InterruptedException();
+        }
+        ParsedSource source = new ParsedSource(fileName, opener, onDelivered);
+        pendingSources.put(source);
+        executor.execute(source);
+    }
+
+    /**
+     * Reads the given stream to its end, splitting it in to blocks that end at a line break,
+     * and submits the blocks to be parsed
+     *
+     * @param fileName Name of the file to which the lines belong, or null
+     */
+    void submitStream(String fileName, InputStream in) throws Exception {
+        byte[] block = new byte[BLOCK_SIZE];
+        int length = 0;
+        int read;
+        while ((read = in.read(block, length, block.length - length)) != -1) {
+            length += read;
+            if (length == block.length) {
+                int lineEnd = lastLineEnd(block, length);
+                if (lineEnd == 0) {
+                    //no line break yet, keep reading the long line
+                    block = Arrays.copyOf(block, block.length * 2);
+                    continue;
+                }
+                byte[] nextBlock = new byte[Math.max(BLOCK_SIZE, (length - lineEnd) * 2)];
+                System.arraycopy(block, lineEnd, nextBlock, 0, length - lineEnd);
+                submitBlock(fileName, block, lineEnd);
+                block = nextBlock;
+                length -= lineEnd;
+            }
+        }
+        if (length > 0) {
+            submitBlock(fileName, block, length);
+        }
+    }
+
+    private void submitBlock(String fileName, byte[] block, int length) throws InterruptedException {
+        submit(fileName, () -> new ByteArrayInputStream(block, 0, length));
+    }
+
+    /**
+     * Returns the position after the last line break in the block, or 0 if there is none
+     */
+    private static int lastLineEnd(byte[] block, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (block[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Opens the data of a source to be parsed
+     */
+    interface SourceOpener {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * Submits the sources to be parsed
+     */
+    interface SourceProducer {
+        void produce(ParallelLineParser parser) throws Exception;
+    }
+
+    /**
+     * A chunk of parsed lines, and the processes found in them
+     */
+    private static final class ParsedChunk {
+        private final String logData;
+        private final Set<LogProcess> processes;
+        private final Exception error;
+
+        private ParsedChunk(String logData, Set<LogProcess> processes, Exception error) {
+            this.logData = logData;
+            this.processes = processes;
+            this.error = error;
+        }
+    }
+
+    /**
+     * A source that is parsed on a worker thread with a {@link LineScanner}, handing over its lines in chunks
+     */
+    private final class ParsedSource implements Runnable, LineScanner.LineConsumer {
+
+        private final ParsedChunk lastChunk = new ParsedChunk(null, null, null);
+        private final String fileName;
+        private final SourceOpener opener;
+        private final Runnable onDelivered;
+        private final BlockingQueue<ParsedChunk> chunks = new ArrayBlockingQueue<>(CHUNKS_PER_SOURCE);
+        private final StringBuilder logData = new StringBuilder();
+        private Set<LogProcess> processes = new HashSet<>();
+        private LogLineParser lineParser;
+        private final LogProcess logProcess = new LogProcess();
+
+        private ParsedSource(String fileName, SourceOpener opener, Runnable onDelivered) {
+            this.fileName = fileName;
+            this.opener = opener;
+            this.onDelivered = onDelivered;
+        }
+
+        @Override
+        public void run() {
+            Exception error = null;
+            try (InputStream in = opener.open()) {
+                lineParser = lineParsers.get();
+                lineScanners.get().scan(in, this);
+                if (logData.length() > 0) {
+                    chunks.put(new ParsedChunk(logData.toString(), processes, null));
+                }
+            } catch (InterruptedException ex) {
+                return;
+            } catch (Exception ex) {
+                error = ex;
+            }
+            try {
+                chunks.put(error != null ? new ParsedChunk(null, null, error) : lastChunk);
+            } catch (InterruptedException ignored) {
+            }
+        }
+
+        @Override
+        public void onLine(byte[] data, int start, int end) throws InterruptedException {
+            if (stopped) {
+                throw new InterruptedException();
+            }
+            if (lineParser.parseLine(data, start, end, fileName, LogFileReader.reset(logProcess), logData)) {
+                if (logProcess.getProcessName() != null && !processes.contains(logProcess)) {
+                    processes.add(LogFileReader.copy(logProcess));
+                }
+                if (logData.length() >= CHUNK_SIZE) {
+                    chunks.put(new ParsedChunk(logData.toString(), processes, null));
+                    logData.setLength(0);
+                    processes = new HashSet<>();
+                }
+            }
+        }
+
+        /**
+         * Delivers the chunks of this source to the reader as they are parsed
+         */
+        private void deliver() throws Exception {
+            ParsedChunk chunk;
+            while ((chunk = chunks.take()) != lastChunk) {
+                if (chunk.error != null) {
+                    throw chunk.error;
+                }
+                reader.addParsedData(chunk.logData, chunk.processes);
+            }
+            if (onDelivered != null) {
+                onDelivered.run();
+            }
+        }
+    }
+}
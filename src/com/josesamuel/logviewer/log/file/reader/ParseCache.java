@@ -0,0 +1,250 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import com.josesamuel.logviewer.log.LogProcess;
+import com.josesamuel.logviewer.util.CacheDirectory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Cache of the parsed lines of a log file, kept in the cache directory across restarts.
+ * The cache file holds a header identifying the source, the parsed lines, and a trailer with the processes
+ * and the offset of each line, so a cached file is opened by mapping it without parsing anything.
+ * For a plain file the lines are not copied, only the offsets in the source file are kept.
+ * A cache is used as long as the size, the modification time and the hash of samples of the source match.
+ */
+class ParseCache {
+
+    private static final String CACHE_KIND = "parse-cache";
+    private static final String CACHE_EXTENSION = ".lvcache";
+    private static final String MERGED_CACHE_EXTENSION = ".merged.lvcache";
+    private static final int MAGIC = 0x4C565043;
+    private static final int VERSION = 1;
+    private static final int HASH_SIZE = 20;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + HASH_SIZE + 8 + 1 + 8;
+    private static final int SAMPLE_SIZE = 64 * 1024;
+    private static final int SAMPLE_COUNT = 16;
+    private static final long MAX_CACHE_SIZE = 4L * 1024 * 1024 * 1024;
+
+    private final File source;
+    private final File cacheFile;
+
+    /**
+     * Initialize for the given source
+     *
+     * @param mergedByTime Whether the logs in the source are merged by time, which is cached separately
+     */
+    ParseCache(File source, boolean mergedByTime) {
+        this.source = source;
+        this.cacheFile = CacheDirectory.getFile(CACHE_KIND, source, mergedByTime ? MERGED_CACHE_EXTENSION : CACHE_EXTENSION);
+    }
+
+    /**
+     * Returns the cached lines of the source, or null if it is not cached or was modified since
+     *
+     * @param processes Set to which the cached processes are added
+     * @param reader    Reader whose read length is set to the one cached
+     */
+    MappedLogLines load(Set<LogProcess> processes, LogFileReader reader) {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "r")) {
+            if (file.length() < HEADER_SIZE || file.readInt() != MAGIC || file.readInt() != VERSION
+                    || file.readLong() != source.length() || file.readLong() != source.lastModified()) {
+                return null;
+            }
+            byte[] hash = new byte[HASH_SIZE];
+            file.readFully(hash);
+            if (!Arrays.equals(hash, hashSamples(source))) {
+                return null;
+            }
+            long readLength = file.readLong();
+            boolean dataInSource = file.readBoolean();
+            long trailerPosition = file.readLong();
+            if (trailerPosition < HEADER_SIZE || trailerPosition >= file.length()) {
+                return null;
+            }
+            file.seek(trailerPosition);
+            DataInputStream in = new DataInputStream(Channels.newInputStream(file.getChannel()));
+            int processCount = in.readInt();
+            for (int i = 0; i < processCount; i++) {
+                int processId = in.readInt();
+                processes.add(new LogProcess().setProcessID(processId).setProcessName(in.readUTF()));
+            }
+            int lineCount = in.readInt();
+            long offsetsPosition = file.getFilePointer();
+            if (offsetsPosition + (long) lineCount * 8 > file.length()) {
+                return null;
+            }
+            long[] lineOffsets = new long[lineCount];
+            file.getChannel().map(FileChannel.MapMode.READ_ONLY, offsetsPosition, (long) lineCount * 8)
+                    .asLongBuffer().get(lineOffsets);
+            reader.setReadLength(readLength);
+            CacheDirectory.touch(cacheFile);
+            return new MappedLogLines(dataInSource ? source : cacheFile, lineOffsets, !dataInSource);
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Saves the index of the lines of a plain file, whose lines are read from the file itself
+     */
+    void saveIndex(long[] lineOffsets, Set<LogProcess> processes, long readLength) {
+        try (Writer writer = new Writer(true)) {
+            writer.commit(lineOffsets, lineOffsets.length, processes, readLength);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Starts writing the parsed lines of the source to the cache
+     */
+    Writer startWriting() throws IOException {
+        return new Writer(false);
+    }
+
+    /**
+     * Returns the SHA-1 of samples spread evenly over the file, which is fast even for large files
+     */
+    private static byte[] hashSamples(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            long length = channel.size();
+            ByteBuffer sample = ByteBuffer.allocate(SAMPLE_SIZE);
+            long step = Math.max(SAMPLE_SIZE, (length - SAMPLE_SIZE) / (SAMPLE_COUNT - 1));
+            for (long position = 0; position < length; position += step) {
+                sample.clear();
+                //the last sample is at the end of the file
+                long samplePosition = Math.min(position, Math.max(0, length - SAMPLE_SIZE));
+                while (sample.hasRemaining() && channel.read(sample, samplePosition + sample.position()) > 0) ;
+                digest.update(sample.array(), 0, sample.position());
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Writes a cache file, which replaces the previous one once it is committed
+     */
+    final class Writer implements AutoCloseable {
+
+        private final File tempFile;
+        private final boolean dataInSource;
+        private final long sourceLength;
+        private final long sourceLastModified;
+        private final OutputStream out;
+        private long position = HEADER_SIZE;
+        private long[] lineOffsets = new long[1024];
+        private int lineCount;
+        private boolean lineStart = true;
+        private boolean committed;
+
+        private Writer(boolean dataInSource) throws IOException {
+            this.dataInSource = dataInSource;
+            this.sourceLength = source.length();
+            this.sourceLastModified = source.lastModified();
+            this.tempFile = new File(cacheFile.getPath() + ".tmp");
+            FileOutputStream fileOut = new FileOutputStream(tempFile);
+            fileOut.getChannel().position(HEADER_SIZE);
+            this.out = new BufferedOutputStream(fileOut, 256 * 1024);
+        }
+
+        /**
+         * Appends the given parsed lines, each ending with a line break
+         */
+        void write(String logData) throws IOException {
+            byte[] data = logData.getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < data.length; i++) {
+                if (lineStart) {
+                    if (lineCount == lineOffsets.length) {
+                        lineOffsets = Arrays.copyOf(lineOffsets, lineCount * 2);
+                    }
+                    lineOffsets[lineCount++] = position + i;
+                }
+                lineStart = data[i] == '\n';
+            }
+            out.write(data);
+            position += data.length;
+        }
+
+        /**
+         * Writes the trailer, and replaces the previous cache of the source unless the source was modified
+         */
+        void commit(Set<LogProcess> processes, long readLength) throws IOException {
+            commit(lineOffsets, lineCount, processes, readLength);
+        }
+
+        private void commit(long[] offsets, int count, Set<LogProcess> processes, long readLength) throws IOException {
+            DataOutputStream trailer = new DataOutputStream(out);
+            trailer.writeInt(processes.size());
+            for (LogProcess process : processes) {
+                trailer.writeInt(process.getProcessID());
+                trailer.writeUTF(process.getProcessName() != null ? process.getProcessName() : "");
+            }
+            trailer.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                trailer.writeLong(offsets[i]);
+            }
+            trailer.flush();
+            out.close();
+            if (source.length() != sourceLength || source.lastModified() != sourceLastModified) {
+                //modified while it was read
+                return;
+            }
+            try (RandomAccessFile file = new RandomAccessFile(tempFile, "rw")) {
+                file.writeInt(MAGIC);
+                file.writeInt(VERSION);
+                file.writeLong(sourceLength);
+                file.writeLong(sourceLastModified);
+                file.write(hashSamples(source));
+                file.writeLong(readLength);
+                file.writeBoolean(dataInSource);
+                file.writeLong(position);
+            }
+            if (!tempFile.renameTo(cacheFile)) {
+                cacheFile.delete();
+                if (!tempFile.renameTo(cacheFile)) {
+                    return;
+                }
+            }
+            committed = true;
+            CacheDirectory.trim(CACHE_KIND, MAX_CACHE_SIZE);
+        }
+
+        /**
+         * Discards the cache file unless it was committed
+         */
+        @Override
+        public void close() {
+            if (!committed) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+                tempFile.delete();
+            }
+        }
+    }
+}
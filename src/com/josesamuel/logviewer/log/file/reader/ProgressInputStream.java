@@ -0,0 +1,92 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Stream that reports the number of bytes read from it to a {@link LogFileReader.LogFileReaderListener}.
+ * Reading stops after the given total number of bytes, even if more data is appended to the underlying file.
+ */
+class ProgressInputStream extends FilterInputStream {
+
+    private static final long PROGRESS_INTERVAL = 256 * 1024;
+
+    private final long totalBytes;
+    private final long progressOffset;
+    private final long progressTotal;
+    private final LogFileReader.LogFileReaderListener listener;
+    private long bytesRead;
+    private long reportedBytes;
+
+    ProgressInputStream(InputStream in, long totalBytes, LogFileReader.LogFileReaderListener listener) {
+        this(in, totalBytes, 0, totalBytes, listener);
+    }
+
+    /**
+     * Initialize for a stream that is a part of a larger read
+     *
+     * @param totalBytes     Number of bytes to read from the stream
+     * @param progressOffset Number of bytes of the larger read that were read before this stream
+     * @param progressTotal  Total number of bytes of the larger read
+     */
+    ProgressInputStream(InputStream in, long totalBytes, long progressOffset, long progressTotal,
+                        LogFileReader.LogFileReaderListener listener) {
+        super(in);
+        this.totalBytes = totalBytes;
+        this.progressOffset = progressOffset;
+        this.progressTotal = progressTotal;
+        this.listener = listener;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (bytesRead >= totalBytes) {
+            return -1;
+        }
+        int result = super.read();
+        if (result != -1) {
+            onRead(1);
+        }
+        return result;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (bytesRead >= totalBytes) {
+            return -1;
+        }
+        int result = super.read(b, off, (int) Math.min(len, totalBytes - bytesRead));
+        if (result > 0) {
+            onRead(result);
+        }
+        return result;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long result = super.skip(Math.min(n, totalBytes - bytesRead));
+        if (result > 0) {
+            onRead(result);
+        }
+        return result;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(super.available(), totalBytes - bytesRead);
+    }
+
+    private void onRead(long count) {
+        bytesRead += count;
+        if (listener != null && bytesRead - reportedBytes >= PROGRESS_INTERVAL) {
+            reportedBytes = bytesRead;
+            if (listener.isCancelled()) {
+                throw new CancellationException();
+            }
+            listener.onProgress(progressOffset + bytesRead, progressTotal);
+        }
+    }
+}
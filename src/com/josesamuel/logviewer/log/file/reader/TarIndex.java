@@ -0,0 +1,161 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import org.xeustechnologies.jtar.TarConstants;
+import org.xeustechnologies.jtar.TarEntry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Index of the entries of an uncompressed tar file, built by reading only their headers.
+ * The headers are read with positional reads on a {@link FileChannel}, jumping over the data of the entries
+ * instead of reading through it like {@link org.xeustechnologies.jtar.TarInputStream}, so a tar of any size is
+ * listed with one small read per entry. The data of an entry is then read through a {@link FileSliceInputStream}
+ * of the channel at the offset found here.
+ * A compressed tar is indexed as it is decompressed, by writing its data to a {@link Scanner}.
+ */
+class TarIndex {
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    private TarIndex() {
+    }
+
+    /**
+     * Builds the index of the tar file open in the given channel
+     */
+    TarIndex(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(TarConstants.HEADER_BLOCK);
+        long position = 0;
+        while (position + TarConstants.HEADER_BLOCK <= size) {
+            header.clear();
+            while (header.hasRemaining() && channel.read(header, position + header.position()) > 0) ;
+            if (header.hasRemaining() || isEmpty(header.array())) {
+                //end of the archive
+                break;
+            }
+            position = addEntry(header.array().clone(), position);
+        }
+    }
+
+    /**
+     * Adds the entry of the given header at the given position, and returns the position of the next header
+     */
+    private long addEntry(byte[] header, long position) {
+        TarEntry tarEntry = new TarEntry(header);
+        long dataOffset = position + TarConstants.HEADER_BLOCK;
+        entries.add(new Entry(tarEntry, dataOffset));
+        //the data is padded to a whole block
+        long dataBlocks = (tarEntry.getSize() + TarConstants.DATA_BLOCK - 1) / TarConstants.DATA_BLOCK;
+        return dataOffset + dataBlocks * TarConstants.DATA_BLOCK;
+    }
+
+    /**
+     * Returns the entries in the order of the archive
+     */
+    List<Entry> getEntries() {
+        return entries;
+    }
+
+    private static boolean isEmpty(byte[] header) {
+        for (byte b : header) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds the index of a tar whose data is written to it, keeping only the headers and passing over the data of the entries
+     */
+    static final class Scanner extends OutputStream {
+
+        private final TarIndex index = new TarIndex();
+        private final byte[] header = new byte[TarConstants.HEADER_BLOCK];
+        private int headerLength;
+        private long position;
+        private long nextHeader;
+        private boolean ended;
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            while (len > 0 && !ended) {
+                int count;
+                if (position < nextHeader) {
+                    count = (int) Math.min(len, nextHeader - position);
+                } else {
+                    count = Math.min(len, header.length - headerLength);
+                    System.arraycopy(b, off, header, headerLength, count);
+                    headerLength += count;
+                }
+                position += count;
+                off += count;
+                len -= count;
+                if (headerLength == header.length) {
+                    headerLength = 0;
+                    if (isEmpty(header)) {
+                        //end of the archive
+                        ended = true;
+                    } else {
+                        nextHeader = index.addEntry(header.clone(), position - header.length);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns the index of the data written so far
+         */
+        TarIndex getIndex() {
+            return index;
+        }
+    }
+
+    /**
+     * An entry of the archive, with where its data is
+     */
+    static final class Entry {
+
+        private final TarEntry tarEntry;
+        private final long dataOffset;
+
+        private Entry(TarEntry tarEntry, long dataOffset) {
+            this.tarEntry = tarEntry;
+            this.dataOffset = dataOffset;
+        }
+
+        TarEntry getTarEntry() {
+            return tarEntry;
+        }
+
+        /**
+         * Returns the name of the entry without the leading "./"
+         */
+        String getName() {
+            return NestedArchiveParser.getEntryName(tarEntry);
+        }
+
+        /**
+         * Returns the position of the data of the entry in the archive
+         */
+        long getDataOffset() {
+            return dataOffset;
+        }
+
+        long getSize() {
+            return tarEntry.getSize();
+        }
+    }
+}
@@ -1,15 +1,24 @@
 package com.josesamuel.logviewer.log.file.reader;
 
 
-import com.josesamuel.logviewer.log.LogDataListener;
-import org.xeustechnologies.jtar.TarEntry;
-import org.xeustechnologies.jtar.TarInputStream;
-
-import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Reader for tar archives.
+ * The entries are first listed from their headers in to an {@link ArchiveCatalog}, and only the ones picked are read.
+ * The headers are found with the {@link TarIndex}, which jumps from one header to the next without reading the data,
+ * and the entries picked are read from where they are in the file, parsed in parallel by {@link ParallelLineParser}.
+ * Entries that are archives themselves are streamed through {@link NestedArchiveParser}.
+ * Optionally the logs in the archive are merged by their timestamps using {@link LogTimeMerger}.
+ */
 class TarLogFileReader extends LogFileReader {
 
 
@@ -18,38 +27,136 @@ class TarLogFileReader extends LogFileReader {
     }
 
     @Override
-    public StringBuffer getFileData(LogDataListener listener) throws Exception {
-        TarInputStream tis = null;
-        StringBuffer data = null;
-        try {
-            tis = getTarInputStream();
-            data = getFileData(tis);
-        } finally {
-            try {
-                if (tis != null) {
-                    tis.close();
+    public boolean canFollow() {
+        return false;
+    }
+
+    @Override
+    public boolean canReadTimeRange() {
+        return false;
+    }
+
+    @Override
+    public void readFileData(LogFileReaderListener listener) throws Exception {
+        startBatches(listener);
+        ArchiveCatalog catalog = listEntries();
+        catalog.select(listener);
+        if (isMergeByTime()) {
+            mergeEntries(catalog.getSelectedEntries());
+        } else {
+            readEntries(catalog);
+        }
+        flushBatch();
+    }
+
+    /**
+     * Lists the entries of the archive from their headers along with where their data is, without reading the data
+     */
+    ArchiveCatalog listEntries() throws Exception {
+        setReadLength(getFile().length());
+        ArchiveCatalog catalog = new ArchiveCatalog();
+        try (FileChannel channel = FileChannel.open(getFile().toPath(), StandardOpenOption.READ)) {
+            for (TarIndex.Entry entry : new TarIndex(channel).getEntries()) {
+                if (!entry.getTarEntry().isDirectory()) {
+                    catalog.add(entry.getName(), entry.getDataOffset(), entry.getSize());
                 }
-            } catch (Exception e) {
             }
         }
-        return data;
+        return catalog;
+    }
+
+    /**
+     * Reads the entries picked in the catalog, each from where it is in the archive
+     */
+    void readEntries(ArchiveCatalog catalog) throws Exception {
+        List<LogFileSection> entries = catalog.getSelectedEntries();
+        long totalSize = 0;
+        for (LogFileSection entry : entries) {
+            totalSize += entry.getLength();
+        }
+        long progressTotal = totalSize;
+        AtomicLong bytesRead = new AtomicLong();
+        try (FileChannel channel = FileChannel.open(getFile().toPath(), StandardOpenOption.READ);
+             EntryOpener entryOpener = getEntryOpener(channel, entries)) {
+            new ParallelLineParser(this).parse(parser -> {
+                NestedArchiveParser nestedArchiveParser = new NestedArchiveParser(parser);
+                for (LogFileSection entry : entries) {
+                    if (isArchive(entryOpener, entry)) {
+                        try (InputStream in = entryOpener.open(entry.getOffset(), entry.getLength())) {
+                            nestedArchiveParser.submitEntry(entry.getName(), in);
+                        }
+                        updateProgress(bytesRead.addAndGet(entry.getLength()), progressTotal);
+                    } else {
+                        parser.submit(entry.getName(), () -> entryOpener.open(entry.getOffset(), entry.getLength()),
+                                () -> updateProgress(bytesRead.addAndGet(entry.getLength()), progressTotal));
+                    }
+                }
+            });
+        }
     }
 
-    StringBuffer getFileData(TarInputStream tis) throws Exception {
-        StringBuffer data = new StringBuffer();
+    @Override
+    public boolean canMergeByTime() {
+        return true;
+    }
 
-        TarEntry entry;
-        while ((entry = tis.getNextEntry()) != null) {
-            String fName = entry.getName().substring(2);
-            data.append(getFileData(new BufferedReader(
-                    new InputStreamReader(tis)), fName));
+    /**
+     * Merges the given logs in the archive by their timestamps, reading the entries at the same time
+     * from where the catalog found them.
+     * The entries that are archives themselves are not merged, their lines follow the merged lines.
+     */
+    private void mergeEntries(List<LogFileSection> entries) throws Exception {
+        try (FileChannel channel = FileChannel.open(getFile().toPath(), StandardOpenOption.READ);
+             EntryOpener entryOpener = getEntryOpener(channel, entries)) {
+            LogTimeMerger merger = new LogTimeMerger(this);
+            List<LogFileSection> archiveEntries = new ArrayList<>();
+            for (LogFileSection entry : entries) {
+                if (isArchive(entryOpener, entry)) {
+                    archiveEntries.add(entry);
+                } else {
+                    merger.add(entry.getName(), entry.getLength(), () -> entryOpener.open(entry.getOffset(), entry.getLength()));
+                }
+            }
+            merger.merge();
+            if (!archiveEntries.isEmpty()) {
+                new ParallelLineParser(this).parse(parser -> {
+                    NestedArchiveParser nestedArchiveParser = new NestedArchiveParser(parser);
+                    for (LogFileSection entry : archiveEntries) {
+                        try (InputStream in = entryOpener.open(entry.getOffset(), entry.getLength())) {
+                            nestedArchiveParser.submitEntry(entry.getName(), in);
+                        }
+                    }
+                });
+            }
         }
+    }
+
+    /**
+     * Returns whether the given entry is an archive, by reading its first bytes
+     */
+    private static boolean isArchive(EntryOpener entryOpener, LogFileSection entry) throws IOException {
+        byte[] header = new byte[ArchiveFormat.HEADER_SIZE];
+        try (InputStream in = entryOpener.open(entry.getOffset(), entry.getLength())) {
+            return NestedArchiveParser.isArchive(header, ArchiveFormat.readHeader(in, header));
+        }
+    }
 
-        return data;
+    /**
+     * Returns the opener of the given entries of the archive, given their offsets in the tar data
+     */
+    EntryOpener getEntryOpener(FileChannel channel, List<LogFileSection> entries) throws Exception {
+        return (offset, length) -> new FileSliceInputStream(channel, offset, length);
     }
 
-    TarInputStream getTarInputStream() throws Exception {
-        return new TarInputStream(new FileInputStream(getFile()));
+    /**
+     * Opens the data of an entry of the archive. It is closed once the entries are read.
+     */
+    interface EntryOpener extends Closeable {
+        InputStream open(long offset, long length) throws IOException;
+
+        @Override
+        default void close() throws IOException {
+        }
     }
 
 
@@ -1,23 +1,261 @@
 package com.josesamuel.logviewer.log.file.reader;
 
 
+import com.josesamuel.logviewer.util.CacheDirectory;
+import org.xeustechnologies.jtar.TarEntry;
 import org.xeustechnologies.jtar.TarInputStream;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.zip.GZIPInputStream;
 
+/**
+ * Reader for gzip compressed tar archives.
+ * The compressed data can not be jumped over, so small archives are listed and read by streaming the archive,
+ * and reading and parsing are pipelined. One thread reads the entries, and their blocks are parsed in parallel.
+ * Large archives are indexed while they are listed, with the {@link GzipIndex} built from the same pass that finds the headers,
+ * so that the entries picked are then decompressed in parallel from the parts of the archive they are in.
+ * Entries merged by time are read at the same time, so without an index they are first decompressed together in one pass.
+ */
 class TgzLogFileReader extends TarLogFileReader {
 
+    private static final int INFLATE_BUFFER_SIZE = 64 * 1024;
+    private static final long INDEX_SIZE_THRESHOLD = 16 * 1024 * 1024;
+
+    private GzipIndex index;
 
     TgzLogFileReader(File file) {
         super(file);
     }
 
     @Override
-    TarInputStream getTarInputStream() throws Exception {
+    public void readFileData(LogFileReaderListener listener) throws Exception {
+        super.readFileData(listener);
+        if (getFile().length() >= INDEX_SIZE_THRESHOLD) {
+            GzipIndex.buildInBackground(getFile());
+        }
+    }
+
+    @Override
+    ArchiveCatalog listEntries() throws Exception {
+        index = GzipIndex.load(getFile());
+        if (index == null && getFile().length() >= INDEX_SIZE_THRESHOLD) {
+            TarIndex.Scanner scanner = new TarIndex.Scanner();
+            try (InputStream in = openFileInputStream()) {
+                index = GzipIndex.build(getFile(), in, scanner);
+            } catch (IOException ex) {
+                //listed again below, where a file that is not in gzip format fails
+                index = null;
+            }
+            if (index != null) {
+                ArchiveCatalog catalog = new ArchiveCatalog();
+                for (TarIndex.Entry entry : scanner.getIndex().getEntries()) {
+                    if (!entry.getTarEntry().isDirectory()) {
+                        catalog.add(entry.getName(), entry.getDataOffset(), entry.getSize());
+                    }
+                }
+                return catalog;
+            }
+        }
+        ArchiveCatalog catalog = new ArchiveCatalog();
+        try (TarInputStream tis = getTarInputStream()) {
+            TarEntry entry;
+            while ((entry = tis.getNextEntry()) != null) {
+                if (!entry.isDirectory()) {
+                    catalog.add(NestedArchiveParser.getEntryName(entry), tis.getCurrentOffset(), entry.getSize());
+                }
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * Reads the entries picked in the catalog through the index if there is one,
+     * or else in one pass over the archive, skipping the others
+     */
+    @Override
+    void readEntries(ArchiveCatalog catalog) throws Exception {
+        if (index != null) {
+            super.readEntries(catalog);
+            return;
+        }
+        try (TarInputStream tis = getTarInputStream()) {
+            new ParallelLineParser(this).parse(parser -> {
+                NestedArchiveParser nestedArchiveParser = new NestedArchiveParser(parser);
+                TarEntry entry;
+                while ((entry = tis.getNextEntry()) != null) {
+                    String name = NestedArchiveParser.getEntryName(entry);
+                    if (!entry.isDirectory() && catalog.isSelected(name)) {
+                        nestedArchiveParser.submitEntry(name, tis);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Opens the entries through the {@link GzipIndex} if the archive has one, decompressing only one span of each entry at a time.
+     * If a span of it fails, the entry is decompressed from the start of the archive.
+     * Without an index, the entries are decompressed in one pass over the archive instead, see {@link #spoolEntries(List)}.
+     */
+    @Override
+    EntryOpener getEntryOpener(FileChannel channel, List<LogFileSection> entries) throws Exception {
+        if (index == null) {
+            return spoolEntries(entries);
+        }
+        GzipIndex entryIndex = index;
+        return (offset, length) -> new ProgressInputStream(new EntryInputStream(getFile(), entryIndex, channel, offset), length, null);
+    }
+
+    /**
+     * Decompresses the given entries, which are in the order of the archive, in one pass to a spool file,
+     * and opens them from there. The spool file is deleted once the entries are read.
+     */
+    private EntryOpener spoolEntries(List<LogFileSection> entries) throws Exception {
+        File spoolFile = File.createTempFile("entries", ".tar", CacheDirectory.getDirectory("spool"));
+        FileChannel spool = FileChannel.open(spoolFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+        Map<Long, Long> spoolOffsets = new HashMap<>();
+        try (InputStream in = new GZIPInputStream(openFileInputStream(), INFLATE_BUFFER_SIZE)) {
+            byte[] buffer = new byte[INFLATE_BUFFER_SIZE];
+            long position = 0;
+            for (LogFileSection entry : entries) {
+                skipFully(in, entry.getOffset() - position);
+                spoolOffsets.put(entry.getOffset(), spool.position());
+                long remaining = entry.getLength();
+                while (remaining > 0) {
+                    int count = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (count == -1) {
+                        throw new EOFException("Unexpected end of the archive");
+                    }
+                    ByteBuffer data = ByteBuffer.wrap(buffer, 0, count);
+                    while (data.hasRemaining()) {
+                        spool.write(data);
+                    }
+                    remaining -= count;
+                }
+                position = entry.getOffset() + entry.getLength();
+            }
+        } catch (Exception ex) {
+            spool.close();
+            throw ex;
+        }
+        return new EntryOpener() {
+            @Override
+            public InputStream open(long offset, long length) {
+                return new FileSliceInputStream(spool, spoolOffsets.get(offset), length);
+            }
+
+            @Override
+            public void close() throws IOException {
+                spool.close();
+            }
+        };
+    }
+
+    /**
+     * Skips the given number of bytes of the stream, failing if it ends before
+     */
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                throw new EOFException("Offset past the end of the gzip file");
+            }
+            count -= skipped;
+        }
+    }
+
+    private TarInputStream getTarInputStream() throws Exception {
+        if (index != null) {
+            setReadLength(getFile().length());
+            return new TarInputStream(new IndexedGzipInputStream(getFile(), index, 0, getListener()));
+        }
         return new TarInputStream(new GZIPInputStream(
-                new FileInputStream(getFile())));
+                openFileInputStream(), INFLATE_BUFFER_SIZE));
+    }
+
+    /**
+     * Decompressed data of the archive from an offset, read through the {@link GzipIndex} if there is one.
+     * When the index fails, the data is read on from the same place by decompressing the archive from its start.
+     */
+    private static final class EntryInputStream extends InputStream {
+
+        private final File file;
+        private final long offset;
+        private InputStream in;
+        private boolean indexed;
+        private long bytesRead;
+
+        private EntryInputStream(File file, GzipIndex index, FileChannel channel, long offset) throws IOException {
+            this.file = file;
+            this.offset = offset;
+            if (index != null) {
+                try {
+                    in = index.openStream(channel, offset);
+                    indexed = true;
+                } catch (IOException ex) {
+                    in = null;
+                }
+            }
+            if (in == null) {
+                openSequential();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count;
+            try {
+                count = in.read(b, off, len);
+            } catch (IOException ex) {
+                if (!indexed) {
+                    throw ex;
+                }
+                in.close();
+                indexed = false;
+                openSequential();
+                count = in.read(b, off, len);
+            }
+            if (count > 0) {
+                bytesRead += count;
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        /**
+         * Opens the archive from its start, skipping to where the reading is
+         */
+        private void openSequential() throws IOException {
+            InputStream sequential = new GZIPInputStream(new FileInputStream(file), INFLATE_BUFFER_SIZE);
+            try {
+                skipFully(sequential, offset + bytesRead);
+            } catch (IOException ex) {
+                sequential.close();
+                throw ex;
+            }
+            in = sequential;
+        }
     }
 
 }
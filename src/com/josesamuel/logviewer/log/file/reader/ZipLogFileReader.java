@@ -1,15 +1,24 @@
 package com.josesamuel.logviewer.log.file.reader;
 
 
-import com.josesamuel.logviewer.log.LogDataListener;
-
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
+/**
+ * Reader for zip archives.
+ * The entries are listed from the central directory in to an {@link ArchiveCatalog}, and only the ones picked are read.
+ * The entries are inflated and parsed in parallel using the random access of {@link ZipFile},
+ * and their lines are delivered in the order of the entries in the archive, or merged by their timestamps.
+ * Entries that are archives themselves are streamed through {@link NestedArchiveParser}.
+ */
 class ZipLogFileReader extends LogFileReader {
 
 
@@ -18,23 +27,51 @@ class ZipLogFileReader extends LogFileReader {
     }
 
     @Override
-    public StringBuffer getFileData(LogDataListener listener) throws Exception {
+    public boolean canFollow() {
+        return false;
+    }
+
+    @Override
+    public boolean canReadTimeRange() {
+        return false;
+    }
 
-        StringBuffer data = new StringBuffer();
+    @Override
+    public void readFileData(LogFileReaderListener listener) throws Exception {
+        startBatches(listener);
         ZipFile zipFile = null;
         try {
 
             zipFile = new ZipFile(getFile());
-            Enumeration entries = zipFile.entries();
-            ZipEntry zipEntry;
-
-            while (entries.hasMoreElements()) {
-                zipEntry = (ZipEntry) entries.nextElement();
-                if (!zipEntry.isDirectory()) {
-                    data.append(getFileData(new BufferedReader(new InputStreamReader(zipFile.getInputStream(zipEntry))),
-                            zipEntry.getName()));
-                }
+            ZipFile archive = zipFile;
+            List<ZipEntry> zipEntries = selectEntries(archive, listener);
+            long totalSize = 0;
+            for (ZipEntry zipEntry : zipEntries) {
+                totalSize += zipEntry.getCompressedSize();
             }
+            long progressTotal = totalSize;
+            AtomicLong bytesRead = new AtomicLong();
+
+            if (isMergeByTime()) {
+                mergeEntries(archive, zipEntries);
+                flushBatch();
+                return;
+            }
+            new ParallelLineParser(this).parse(parser -> {
+                NestedArchiveParser nestedArchiveParser = new NestedArchiveParser(parser);
+                for (ZipEntry zipEntry : zipEntries) {
+                    if (isArchive(archive, zipEntry)) {
+                        try (InputStream in = archive.getInputStream(zipEntry)) {
+                            nestedArchiveParser.submitEntry(zipEntry.getName(), in);
+                        }
+                        updateProgress(bytesRead.addAndGet(zipEntry.getCompressedSize()), progressTotal);
+                    } else {
+                        parser.submit(zipEntry.getName(), () -> archive.getInputStream(zipEntry),
+                                () -> updateProgress(bytesRead.addAndGet(zipEntry.getCompressedSize()), progressTotal));
+                    }
+                }
+            });
+            flushBatch();
 
         } finally {
             try {
@@ -44,7 +81,83 @@ class ZipLogFileReader extends LogFileReader {
             } catch (Exception e) {
             }
         }
-        return data;
+    }
+
+    @Override
+    public boolean canMergeByTime() {
+        return true;
+    }
+
+    /**
+     * Lists the entries of the archive from its central directory, without inflating them,
+     * and returns the ones picked through the {@link ArchiveCatalog} in the order of the archive
+     */
+    private List<ZipEntry> selectEntries(ZipFile archive, LogFileReaderListener listener) throws IOException {
+        ArchiveCatalog catalog = new ArchiveCatalog();
+        List<ZipEntry> zipEntries = new ArrayList<>();
+        Enumeration entries = archive.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry zipEntry = (ZipEntry) entries.nextElement();
+            if (!zipEntry.isDirectory()) {
+                zipEntries.add(zipEntry);
+                catalog.add(zipEntry.getName(), -1, zipEntry.getSize());
+            }
+        }
+        ZipEntry mainEntry = archive.getEntry(ArchiveCatalog.MAIN_ENTRY_NAME);
+        if (mainEntry != null) {
+            catalog.selectOnly(readMainEntry(archive, mainEntry));
+        }
+        catalog.select(listener);
+        zipEntries.removeIf(zipEntry -> !catalog.isSelected(zipEntry.getName()));
+        return zipEntries;
+    }
+
+    /**
+     * Returns the name of the main entry of a bugreport zip, which is the content of its {@link ArchiveCatalog#MAIN_ENTRY_NAME}
+     */
+    private static String readMainEntry(ZipFile archive, ZipEntry mainEntry) throws IOException {
+        try (InputStream in = archive.getInputStream(mainEntry)) {
+            byte[] data = new byte[ArchiveFormat.HEADER_SIZE];
+            int length = ArchiveFormat.readHeader(in, data);
+            return new String(data, 0, length, StandardCharsets.UTF_8).trim();
+        }
+    }
+
+    /**
+     * Merges the given logs in the archive by their timestamps. The entries that are archives themselves
+     * are not merged, their lines follow the merged lines.
+     */
+    private void mergeEntries(ZipFile archive, List<ZipEntry> zipEntries) throws Exception {
+        LogTimeMerger merger = new LogTimeMerger(this);
+        List<ZipEntry> archiveEntries = new ArrayList<>();
+        for (ZipEntry zipEntry : zipEntries) {
+            if (isArchive(archive, zipEntry)) {
+                archiveEntries.add(zipEntry);
+            } else {
+                merger.add(zipEntry.getName(), zipEntry.getSize(), () -> archive.getInputStream(zipEntry));
+            }
+        }
+        merger.merge();
+        if (!archiveEntries.isEmpty()) {
+            new ParallelLineParser(this).parse(parser -> {
+                NestedArchiveParser nestedArchiveParser = new NestedArchiveParser(parser);
+                for (ZipEntry zipEntry : archiveEntries) {
+                    try (InputStream in = archive.getInputStream(zipEntry)) {
+                        nestedArchiveParser.submitEntry(zipEntry.getName(), in);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns whether the given entry is an archive, by reading its first bytes
+     */
+    private static boolean isArchive(ZipFile zipFile, ZipEntry zipEntry) throws Exception {
+        try (InputStream in = zipFile.getInputStream(zipEntry)) {
+            byte[] header = new byte[ArchiveFormat.HEADER_SIZE];
+            return NestedArchiveParser.isArchive(header, ArchiveFormat.readHeader(in, header));
+        }
     }
 
 
@@ -0,0 +1,78 @@
+package com.josesamuel.logviewer.util;
+
+import com.intellij.openapi.application.PathManager;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Locates the files that LogViewer keeps in the IDE system directory,
+ * like the indexes built for the opened log files.
+ */
+public class CacheDirectory {
+
+    private static final String CACHE_DIRECTORY = "logviewer";
+
+    /**
+     * Returns the directory for the given kind of cache files, creating it if needed
+     */
+    public static File getDirectory(String kind) {
+        File directory = new File(new File(PathManager.getSystemPath(), CACHE_DIRECTORY), kind);
+        if (!directory.isDirectory()) {
+            directory.mkdirs();
+        }
+        return directory;
+    }
+
+    /**
+     * Returns the cache file of the given kind for the given source file.
+     * The name is derived from the path of the source, so it stays the same across restarts.
+     */
+    public static File getFile(String kind, File source, String extension) {
+        return new File(getDirectory(kind), hash(source.getAbsolutePath()) + extension);
+    }
+
+    /**
+     * Marks the given cache file as used, so that it is evicted after the files that were used before it
+     */
+    public static void touch(File file) {
+        file.setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * Deletes the least recently used files of the given kind until they take at most the given number of bytes
+     */
+    public static void trim(String kind, long maxSize) {
+        File[] files = getDirectory(kind).listFiles(File::isFile);
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+            if (size > maxSize) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the SHA-1 of the given text as hex
+     */
+    public static String hash(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            StringBuilder hash = new StringBuilder();
+            for (byte b : digest.digest(text.getBytes(StandardCharsets.UTF_8))) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        } catch (Exception ex) {
+            return Integer.toHexString(text.hashCode());
+        }
+    }
+}
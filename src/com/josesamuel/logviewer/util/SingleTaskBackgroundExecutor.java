@@ -11,6 +11,8 @@ import org.jetbrains.annotations.NotNull;
  * Executes given background tasks using {@link com.intellij.openapi.progress.ProgressManager}
  * by making sure only one is allowed at one time
  * Others will be ignored
+ * Long tasks that the user can cancel, like loading a file, are run with {@link #executeCancellable(Project, BackgroundTask)}
+ * instead, so they do not hold up the other tasks.
  */
 public class SingleTaskBackgroundExecutor {
 
@@ -85,4 +87,27 @@ public class SingleTaskBackgroundExecutor {
         }
 
     }
+
+    /**
+     * Executes the given task right away, even if other tasks are running, and without blocking them.
+     * The user can cancel the task, which it should check for using {@link ProgressIndicator#isCanceled()}.
+     */
+    public static void executeCancellable(Project project, BackgroundTask task) {
+        Task.Backgroundable backgroundable = new Task.Backgroundable(project, task.getTaskName(), true) {
+            public void run(@NotNull ProgressIndicator progressIndicator) {
+                try {
+                    task.run(progressIndicator);
+                } catch (Throwable ignored) {
+                } finally {
+                    task.onTaskComplete();
+                }
+            }
+        };
+
+        try {
+            UIUtil.invokeLaterIfNeeded(() -> ProgressManager.getInstance().runProcessWithProgressAsynchronously(backgroundable, new BackgroundableProcessIndicator(backgroundable)));
+        } catch (Exception ignored) {
+            task.onTaskIgnored();
+        }
+    }
 }
@@ -40,6 +40,22 @@ public final class AndroidLogcatPreferences implements PersistentStateComponent<
      * Or, set to an empty string to disable this extra step of processing
      */
     public String LOGCAT_FORMAT_STRING = "";
+    /**
+     * Whether the logs inside an archive are merged by their timestamps, instead of being shown one after the other
+     */
+    public boolean MERGE_ARCHIVE_LOGS_BY_TIME = false;
+    /**
+     * Whether the last lines of a file are shown first, and the older lines are loaded after them
+     */
+    public boolean LOAD_FILES_NEWEST_FIRST = false;
+    /**
+     * Most memory in megabytes taken by the messages of the lines of a file, which are kept off the heap
+     */
+    public int MAX_LOG_MEMORY_MB = 2048;
+    /**
+     * Most memory in megabytes taken by the compressed history of a live log, the lines older than the ones in the console
+     */
+    public int LIVE_HISTORY_MB = 64;
 
     public static AndroidLogcatPreferences getInstance(Project project) {
         return ServiceManager.getService(project, AndroidLogcatPreferences.class);
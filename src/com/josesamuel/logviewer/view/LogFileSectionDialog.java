@@ -0,0 +1,62 @@
+package com.josesamuel.logviewer.view;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.ui.CheckBoxList;
+import com.intellij.ui.components.JBScrollPane;
+import com.josesamuel.logviewer.log.file.reader.LogFileSection;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.util.List;
+
+/**
+ * Dialog to pick which sections of a log file are loaded
+ */
+public class LogFileSectionDialog extends DialogWrapper {
+
+    private final List<LogFileSection> sections;
+    private final CheckBoxList<LogFileSection> sectionList = new CheckBoxList<>();
+
+    public LogFileSectionDialog(Project project, String fileName, List<LogFileSection> sections) {
+        super(project, false);
+        this.sections = sections;
+        for (LogFileSection section : sections) {
+            String details = StringUtil.formatFileSize(section.getLength());
+            if (section.getFormat() != null) {
+                details += ", " + section.getFormat();
+            }
+            sectionList.addItem(section, section.getName() + "  (" + details + ")", section.isSelected());
+        }
+        setTitle("Sections of " + fileName);
+        setOKButtonText("Load");
+        init();
+    }
+
+    @Nullable
+    @Override
+    protected JComponent createCenterPanel() {
+        return new JBScrollPane(sectionList);
+    }
+
+    @Nullable
+    @Override
+    public JComponent getPreferredFocusedComponent() {
+        return sectionList;
+    }
+
+    /**
+     * Shows the dialog, and marks the sections picked by the user as selected.
+     * Returns false if the dialog was cancelled.
+     */
+    public boolean selectSections() {
+        if (!showAndGet()) {
+            return false;
+        }
+        for (LogFileSection section : sections) {
+            section.setSelected(sectionList.isItemSelected(section));
+        }
+        return true;
+    }
+}
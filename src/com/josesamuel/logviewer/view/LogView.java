@@ -1,6 +1,6 @@
 package com.josesamuel.logviewer.view;
 
-import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.Log;
 import com.android.ddmlib.logcat.LogCatMessage;
 import com.android.tools.idea.actions.BrowserHelpAction;
 import com.android.tools.idea.ddms.DeviceContext;
@@ -19,9 +19,16 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.FoldRegion;
+import com.intellij.openapi.editor.LogicalPosition;
+import com.intellij.openapi.editor.ScrollingModel;
 import com.intellij.openapi.editor.SelectionModel;
+import com.intellij.openapi.editor.markup.HighlighterLayer;
+import com.intellij.openapi.editor.markup.HighlighterTargetArea;
+import com.intellij.openapi.editor.markup.MarkupModel;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.InputValidator;
+import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.Key;
 import com.intellij.psi.search.GlobalSearchScope;
@@ -30,11 +37,19 @@ import com.intellij.ui.SideBorder;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.ui.UIUtil;
 import com.josesamuel.logviewer.gist.GistCreator;
+import com.josesamuel.logviewer.log.CompressedLogLines;
 import com.josesamuel.logviewer.log.LogDataListener;
+import com.josesamuel.logviewer.log.LogDictionary;
+import com.josesamuel.logviewer.log.LogLines;
 import com.josesamuel.logviewer.log.LogProcess;
 import com.josesamuel.logviewer.log.LogSource;
 import com.josesamuel.logviewer.log.LogSourceManager;
+import com.josesamuel.logviewer.log.LogStore;
+import com.josesamuel.logviewer.log.MessageArena;
 import com.josesamuel.logviewer.log.dnd.DnDHandler;
+import com.josesamuel.logviewer.log.file.FileLogDataProvider;
+import com.josesamuel.logviewer.log.file.FileLogSource;
+import com.josesamuel.logviewer.log.file.reader.LogTimeRange;
 import com.josesamuel.logviewer.util.SingleTaskBackgroundExecutor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -48,6 +63,8 @@ import java.util.*;
 import java.util.List;
 import java.util.Timer;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 /**
  * The main view of the logviewer
@@ -81,6 +98,7 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
     private java.util.Set<LogProcess> processFilter;
     private java.util.Set<String> addFilters;
     private java.util.Set<String> removeFilters;
+    private volatile NameFilters nameFilters;
     private GistCreator gistCreator;
     private LogViewerFilterModel myLogFilterModel = new LogViewerFilterModel();
     private AndroidLogcatFormatter logFormatter;
@@ -88,6 +106,7 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
     private Timer timer;
     private long textFilterUpdateCreateTime;
     private boolean liveLogPaused;
+    private boolean showHistory;
 
     /**
      * Initialize the views
@@ -112,6 +131,7 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
             for (Object selection : processList.getSelectedValuesList()) {
                 processFilter.add((LogProcess) selection);
             }
+            nameFilters = null;
             myLogConsole.refresh("Filtering process");
         };
         Runnable textUpdateTask = this::resetTextFilters;
@@ -249,6 +269,7 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
                 }
             }
         }
+        nameFilters = null;
         myLogConsole.refresh("Applying Text Filters");
     }
 
@@ -295,7 +316,100 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
                 e.getPresentation().setEnabled(logSourceManager.isDeviceSourceSelected());
             }
         });
+        editorActions.add(new ToggleAction("Follow file", "Show the lines appended to the file", AllIcons.Actions.Refresh) {
 
+            @Override
+            public boolean isSelected(AnActionEvent anActionEvent) {
+                FileLogSource fileLogSource = logSourceManager.getSelectedFileSource();
+                return fileLogSource != null && fileLogSource.getLogProvider().isFollowing();
+            }
+
+            @Override
+            public void setSelected(AnActionEvent anActionEvent, boolean b) {
+                FileLogSource fileLogSource = logSourceManager.getSelectedFileSource();
+                if (fileLogSource != null) {
+                    fileLogSource.getLogProvider().setFollowing(b);
+                }
+            }
+
+            @Override
+            public void update(@NotNull AnActionEvent e) {
+                super.update(e);
+                FileLogSource fileLogSource = logSourceManager.getSelectedFileSource();
+                e.getPresentation().setEnabled(fileLogSource != null && fileLogSource.getLogProvider().canFollow());
+            }
+        });
+
+        editorActions.add(new ToggleAction("Merge by time", "Merge the logs inside the archive by their timestamps", AllIcons.ObjectBrowser.Sorted) {
+
+            @Override
+            public boolean isSelected(AnActionEvent anActionEvent) {
+                FileLogSource fileLogSource = logSourceManager.getSelectedFileSource();
+                return fileLogSource != null && fileLogSource.getLogProvider().isMergeByTime();
+            }
+
+            @Override
+            public void setSelected(AnActionEvent anActionEvent, boolean b) {
+                FileLogSource fileLogSource = logSourceManager.getSelectedFileSource();
+                if (fileLogSource != null) {
+                    AndroidLogcatPreferences.getInstance(myProject).MERGE_ARCHIVE_LOGS_BY_TIME = b;
+                    fileLogSource.getLogProvider().setMergeByTime(b);
+                }
+            }
+
+            @Override
+            public void update(@NotNull AnActionEvent e) {
+                super.update(e);
+                FileLogSource fileLogSource = logSourceManager.getSelectedFileSource();
+                e.getPresentation().setEnabled(fileLogSource != null && fileLogSource.getLogProvider().canMergeByTime());
+            }
+        });
+
+        editorActions.add(new ToggleAction("Newest first", "Show the last lines of the file first, and load the older lines after them", AllIcons.Actions.MoveUp) {
+
+            @Override
+            public boolean isSelected(AnActionEvent anActionEvent) {
+                FileLogSource fileLogSource = logSourceManager.getSelectedFileSource();
+                return fileLogSource != null && fileLogSource.getLogProvider().isNewestFirst();
+            }
+
+            @Override
+            public void setSelected(AnActionEvent anActionEvent, boolean b) {
+                FileLogSource fileLogSource = logSourceManager.getSelectedFileSource();
+                if (fileLogSource != null) {
+                    AndroidLogcatPreferences.getInstance(myProject).LOAD_FILES_NEWEST_FIRST = b;
+                    fileLogSource.getLogProvider().setNewestFirst(b);
+                }
+            }
+
+            @Override
+            public void update(@NotNull AnActionEvent e) {
+                super.update(e);
+                FileLogSource fileLogSource = logSourceManager.getSelectedFileSource();
+                e.getPresentation().setEnabled(fileLogSource != null && fileLogSource.getLogProvider().canReadNewestFirst());
+            }
+        });
+        editorActions.add(new ToggleAction("Show history", "Show the older lines of the live log, which are kept compressed", AllIcons.Actions.Back) {
+
+            @Override
+            public boolean isSelected(AnActionEvent anActionEvent) {
+                return showHistory;
+            }
+
+            @Override
+            public void setSelected(AnActionEvent anActionEvent, boolean b) {
+                showHistory = b;
+                myLogConsole.refresh(b ? "Showing history" : "Hiding history");
+            }
+
+            @Override
+            public void update(@NotNull AnActionEvent e) {
+                super.update(e);
+                e.getPresentation().setEnabled(logSourceManager.isDeviceSourceSelected());
+            }
+        });
+        editorActions.add(createTimeRangeAction());
+        editorActions.add(createMemoryAction());
         editorActions.add(createGistAction());
         editorActions.add(new BrowserHelpAction("LogViewer", "https://josesamuel.com/logviewer/"));
         editorActions.addSeparator();
@@ -304,6 +418,75 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
         return editorActions;
     }
 
+    /**
+     * Returns an action that loads only the lines of the file within a time range
+     */
+    private AnAction createTimeRangeAction() {
+        return new AnAction("Time range", "Load only the lines of the file within a time range", AllIcons.Vcs.History) {
+            @Override
+            public void actionPerformed(AnActionEvent anActionEvent) {
+                FileLogSource fileLogSource = logSourceManager.getSelectedFileSource();
+                if (fileLogSource == null) {
+                    return;
+                }
+                FileLogDataProvider logProvider = fileLogSource.getLogProvider();
+                LogTimeRange timeRange = logProvider.getTimeRange();
+                String text = Messages.showInputDialog(myProject,
+                        "Time range like \"10:02:00 - 10:07:30\" or \"10:05:00 +-5\" (minutes before and after), empty for the whole file",
+                        "Time Range", null, timeRange != null ? timeRange.toString() : "", new InputValidator() {
+                            @Override
+                            public boolean checkInput(String inputString) {
+                                return inputString.trim().isEmpty() || LogTimeRange.isValid(inputString);
+                            }
+
+                            @Override
+                            public boolean canClose(String inputString) {
+                                return checkInput(inputString);
+                            }
+                        });
+                if (text != null) {
+                    logProvider.setTimeRange(text.trim().isEmpty() ? null : LogTimeRange.parse(text));
+                }
+            }
+
+            @Override
+            public void update(@NotNull AnActionEvent e) {
+                FileLogSource fileLogSource = logSourceManager.getSelectedFileSource();
+                e.getPresentation().setEnabled(fileLogSource != null && fileLogSource.getLogProvider().canReadTimeRange());
+            }
+        };
+    }
+
+    /**
+     * Returns an action that shows the memory taken off the heap by the messages of the logs
+     */
+    private AnAction createMemoryAction() {
+        return new AnAction("Log memory", "Memory taken by the messages of the logs", AllIcons.General.Information) {
+            @Override
+            public void actionPerformed(AnActionEvent anActionEvent) {
+                showHint(getMemoryText());
+            }
+
+            @Override
+            public void update(@NotNull AnActionEvent e) {
+                e.getPresentation().setText(getMemoryText());
+            }
+        };
+    }
+
+    /**
+     * Returns the memory taken by the messages of the shown log and of all the logs, as text
+     */
+    private String getMemoryText() {
+        LogStore logStore = myLogConsole.getLogStore();
+        CompressedLogLines history = myLogConsole.getHistory();
+        long megabyte = 1024 * 1024;
+        return "Log messages take " + logStore.getMemorySize() / megabyte + " MB of " + logStore.getMaxMemorySize() / megabyte
+                + " MB off the heap, " + MessageArena.getTotalSize() / megabyte + " MB for all logs. "
+                + history.size() + " older lines take " + history.getCompressedSize() / megabyte + " MB of " + history.getMaxSize() / megabyte
+                + " MB compressed";
+    }
+
     /**
      * Returns an action that creates a gist
      */
@@ -487,6 +670,7 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
         if (myLogSource != logSource) {
             liveLogPaused = false;
             processFilter.clear();
+            nameFilters = null;
             processListModel.clear();
             if (myLogSource != null) {
                 myLogSource.getLogProvider().unRegisterLogListener(this);
@@ -494,6 +678,7 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
             if (myLogConsole.getConsole() != null) {
                 myLogConsole.clear();
             }
+            myLogConsole.setLogLines(null);
             myLogFilterModel.processingStarted();
             myLogSource = logSource;
             if (myLogSource != null) {
@@ -516,20 +701,45 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
     @Override
     public final void dispose() {
         logSourceManager.dispose();
+        myLogConsole.closeLogStore();
     }
 
     /**
      * Check whether the given line can be shown based on current filters
      */
     private boolean canAccept(LogCatMessage line) {
-        return canAcceptLevel(line) && canAcceptProcess(line) && canAcceptMessage(line);
+        return canAccept(line.getHeader().getLogLevel(), line.getPid(), line.getAppName(), line.getTag(), line::getMessage);
+    }
+
+    /**
+     * Check whether the message with the given fields can be shown based on current filters.
+     * The message text is only asked for if there are filters on it.
+     */
+    private boolean canAccept(Log.LogLevel level, int pid, String appName, String tag, Supplier<String> message) {
+        return canAcceptLevel(level) && canAcceptProcess(pid, appName, tag) && canAcceptMessage(pid, appName, tag, message);
+    }
+
+    /**
+     * Check whether the line of the store can be shown based on current filters, like {@link #canAccept(Log.LogLevel, int, String, String, Supplier)},
+     * but checking its tag and package by their ids in the dictionary of the store
+     */
+    private boolean canAccept(Log.LogLevel level, LogStore logStore, int index) {
+        if (!canAcceptLevel(level)) {
+            return false;
+        }
+        NameFilters filters = getNameFilters(logStore.getDictionary());
+        int pid = logStore.getPid(index);
+        int appNameId = logStore.getPackageId(index);
+        int tagId = logStore.getTagId(index);
+        return canAcceptProcess(pid, appNameId, tagId, filters)
+                && canAcceptMessage(pid, appNameId, tagId, () -> logStore.getMessage(index), filters);
     }
 
     /**
      * Check whether the  log level of the given message is acceptable
      */
-    private boolean canAcceptLevel(LogCatMessage line) {
-        switch (line.getHeader().getLogLevel()) {
+    private boolean canAcceptLevel(Log.LogLevel level) {
+        switch (level) {
             case ASSERT:
                 return aCheckBox.isSelected();
             case DEBUG:
@@ -549,29 +759,50 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
     /**
      * Check whether the  process of the given message is acceptable
      */
-    private boolean canAcceptProcess(LogCatMessage line) {
+    private boolean canAcceptProcess(int pid, String appName, String tag) {
         if (processFilter.isEmpty()) {
             return true;
         }
         boolean accept = true;
         if (logSourceManager.isDeviceSourceSelected()) {
-            String appName = line.getAppName();
             if (appName != null) {
-                accept = canAcceptProcessName(line.getAppName());
+                accept = canAcceptProcessName(appName);
                 if (!accept && appName.indexOf('.') == -1) {
-                    accept = canAcceptProcessName(line.getTag());
+                    accept = canAcceptProcessName(tag);
                 }
             }
-            if (accept && line.getPid() != 0) {
-                accept = canAcceptPid(line.getPid());
+            if (accept && pid != 0) {
+                accept = canAcceptPid(pid);
             }
         } else {
-            if (line.getTag() != null) {
-                accept = canAcceptProcessName(line.getTag());
+            if (tag != null) {
+                accept = canAcceptProcessName(tag);
+            }
+            if (accept && pid != 0) {
+                accept = canAcceptPid(pid);
             }
-            if (accept && line.getPid() != 0) {
-                accept = canAcceptPid(line.getPid());
+        }
+        return accept;
+    }
+
+    /**
+     * Check whether the  process of the given message is acceptable, with its names given as ids
+     */
+    private boolean canAcceptProcess(int pid, int appNameId, int tagId, NameFilters filters) {
+        if (processFilter.isEmpty()) {
+            return true;
+        }
+        boolean accept;
+        if (logSourceManager.isDeviceSourceSelected()) {
+            accept = filters.canAcceptProcessName(appNameId);
+            if (!accept && filters.getName(appNameId).indexOf('.') == -1) {
+                accept = filters.canAcceptProcessName(tagId);
             }
+        } else {
+            accept = filters.canAcceptProcessName(tagId);
+        }
+        if (accept && pid != 0) {
+            accept = canAcceptPid(pid);
         }
         return accept;
     }
@@ -603,9 +834,37 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
     /**
      * Check whether the message of the given message is acceptable
      */
-    private boolean canAcceptMessage(LogCatMessage line) {
-        return (addFilters.isEmpty() || isInFilter(line, addFilters))
-                && (removeFilters.isEmpty() || !isInFilter(line, removeFilters));
+    private boolean canAcceptMessage(int pid, String appName, String tag, Supplier<String> message) {
+        if (addFilters.isEmpty() && removeFilters.isEmpty()) {
+            return true;
+        }
+        String text = message.get();
+        return (addFilters.isEmpty() || isInFilter(pid, appName, tag, text, addFilters))
+                && (removeFilters.isEmpty() || !isInFilter(pid, appName, tag, text, removeFilters));
+    }
+
+    /**
+     * Check whether the message of the given message is acceptable, with its names given as ids.
+     * The message text is only asked for if the names do not decide it.
+     */
+    private boolean canAcceptMessage(int pid, int appNameId, int tagId, Supplier<String> message, NameFilters filters) {
+        String text = null;
+        if (!addFilters.isEmpty() && !filters.isInAddFilters(tagId) && !filters.isInAddFilters(appNameId)) {
+            text = message.get();
+            if (!isInFilter(text, addFilters) && !isInFilter("" + pid, addFilters)) {
+                return false;
+            }
+        }
+        if (!removeFilters.isEmpty()) {
+            if (filters.isInRemoveFilters(tagId) || filters.isInRemoveFilters(appNameId)) {
+                return false;
+            }
+            if (text == null) {
+                text = message.get();
+            }
+            return !isInFilter(text, removeFilters) && !isInFilter("" + pid, removeFilters);
+        }
+        return true;
     }
 
     /**
@@ -619,8 +878,8 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
     /**
      * Check whether given message matches with any filter in the given set
      */
-    private boolean isInFilter(LogCatMessage line, Set<String> filter) {
-        return isInFilter(line.getMessage(), filter) || isInFilter(line.getTag(), filter) || isInFilter(line.getAppName(), filter) || isInFilter("" + line.getPid(), filter);
+    private boolean isInFilter(int pid, String appName, String tag, String message, Set<String> filter) {
+        return isInFilter(message, filter) || isInFilter(tag, filter) || isInFilter(appName, filter) || isInFilter("" + pid, filter);
     }
 
     private boolean isInFilter(String text, Set<String> filters) {
@@ -635,6 +894,18 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
         return false;
     }
 
+    /**
+     * Returns the answers of the filters for the names of the given dictionary, which are kept until the filters change
+     */
+    private NameFilters getNameFilters(LogDictionary dictionary) {
+        NameFilters filters = nameFilters;
+        if (filters == null || filters.dictionary != dictionary) {
+            filters = new NameFilters(dictionary);
+            nameFilters = filters;
+        }
+        return filters;
+    }
+
     @Override
     public void onGistCreated(final String gistUrl) {
         UIUtil.invokeLaterIfNeeded(() -> BrowserUtil.browse(gistUrl));
@@ -671,14 +942,25 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
     }
 
     @Override
-    public void onLogData(String log) {
-        myLogConsole.addLogData(log);
+    public void onLogData(LogStore logStore, int start, int end) {
+        myLogConsole.addLogData(logStore, start, end);
+    }
+
+    @Override
+    public void onLogLines(LogLines logLines) {
+        myLogConsole.setLogLines(logLines);
         myLogConsole.refresh("Loading logs");
     }
 
+    @Override
+    public void onOlderLogLines(LogLines logLines, int count) {
+        myLogConsole.addOlderLines(logLines, count);
+    }
+
     @Override
     public void onCleared() {
         myLogConsole.clear();
+        myLogConsole.setLogLines(null);
     }
 
     @Override
@@ -719,10 +1001,20 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
     final class AndroidLogConsole extends LogConsoleBase {
         private final RegexFilterComponent myRegexFilterComponent = new RegexFilterComponent("LOG_FILTER_HISTORY", 5);
         private final AndroidLogcatPreferences myPreferences;
+        private LogStore myLogStore = new LogStore();
+        private boolean myOwnLogStore = true;
+        private int myLogStoreSize;
+        private CompressedLogLines myHistory;
+        //lines of the console printed for each line of the own store, and before the first of them
+        private final PrintedLines myPrintedLines = new PrintedLines();
+        private int myLinesBeforeStore;
+        private volatile LogLines myLogLines;
+        private volatile boolean myRefreshPending;
 
         AndroidLogConsole(Project project, LogFilterModel logFilterModel, LogFormatter logFormatter) {
             super(project, null, "", false, logFilterModel, GlobalSearchScope.allScope(project), logFormatter);
             myPreferences = AndroidLogcatPreferences.getInstance(project);
+            myHistory = createHistory();
             myRegexFilterComponent.setFilter(myPreferences.TOOL_WINDOW_CUSTOM_FILTER);
             myRegexFilterComponent.setIsRegex(myPreferences.TOOL_WINDOW_REGEXP_FILTER);
             myRegexFilterComponent.addRegexListener(filter -> {
@@ -743,21 +1035,201 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
         }
 
         void addLogLine(@NotNull String line) {
-            super.addMessage(line);
-            if (getOriginalDocument().length() > defaultCycleBufferSize) {
+            if (!myOwnLogStore) {
+                //the lines of a file are kept by its provider
+                printMessageToConsole(line);
+                return;
+            }
+            myLogStore.add(line);
+            if (myLogStore.size() == myLogStoreSize) {
+                //dropped by a full store
+                return;
+            }
+            myLogStoreSize = myLogStore.size();
+            //the whole line is counted, with its header, like the text of the console
+            myPrintedLines.add(printStoredLine(myLogStore, myLogStoreSize - 1), line.length() + 1);
+            if (myPrintedLines.getLength() > defaultCycleBufferSize) {
                 if (getConsole() != null) {
                     ((ConsoleViewImpl) getConsole()).flushDeferredText();
                 }
-                getOriginalDocument().delete(0, defaultCycleBufferSize / 4);
-                refresh("Clearing old logs");
+                //the oldest lines are kept compressed, and are shown with the history the next time it is printed.
+                //They are removed a quarter at a time, so that the console is changed once for many lines
+                int count = Math.max(myLogStoreSize / 4, 1);
+                myHistory.addLines(myLogStore, 0, count);
+                myLogStore.removeFirst(count);
+                myLogStoreSize = myLogStore.size();
+                //the history printed before the store stays as it is
+                removeConsoleLines(myLinesBeforeStore, myPrintedLines.removeFirst(count));
             }
         }
 
         /**
-         * Adds the bulk log data
+         * Removes the given number of lines of the console from the given line, leaving the rest of it as it is
          */
-        void addLogData(String logData) {
-            getOriginalDocument().append(logData).append("\n");
+        private void removeConsoleLines(int startLine, int lineCount) {
+            ConsoleView console = getConsole();
+            Editor editor = console != null ? ((ConsoleViewImpl) console).getEditor() : null;
+            if (editor == null || lineCount == 0) {
+                return;
+            }
+            Document document = editor.getDocument();
+            int start = getLineStartOffset(document, startLine);
+            int end = getLineStartOffset(document, startLine + lineCount);
+            if (end > start) {
+                ApplicationManager.getApplication().runWriteAction(() -> document.deleteString(start, end));
+            }
+        }
+
+        private int getLineStartOffset(Document document, int line) {
+            return line < document.getLineCount() ? document.getLineStartOffset(line) : document.getTextLength();
+        }
+
+        /**
+         * Shows the given lines of the store of a provider, and prints the ones that match the current filters.
+         * The store is read where it is, without copying the lines.
+         */
+        void addLogData(LogStore logStore, int start, int end) {
+            if (logStore != myLogStore) {
+                myLogStore = logStore;
+                myOwnLogStore = false;
+            }
+            for (int i = start; i < end; i++) {
+                printStoredLine(logStore, i);
+            }
+            myLogStoreSize = end;
+        }
+
+        @Override
+        public void clear() {
+            super.clear();
+            myPrintedLines.clear();
+            myLinesBeforeStore = 0;
+            closeLogStore();
+            myHistory = createHistory();
+            myLogStore = new LogStore();
+            myOwnLogStore = true;
+            myLogStoreSize = 0;
+        }
+
+        /**
+         * Returns the store of the shown lines
+         */
+        LogStore getLogStore() {
+            return myLogStore;
+        }
+
+        /**
+         * Returns the compressed lines that were in the console before the lines of its own store
+         */
+        CompressedLogLines getHistory() {
+            return myHistory;
+        }
+
+        private CompressedLogLines createHistory() {
+            return new CompressedLogLines(AndroidLogcatPreferences.getInstance(myProject).LIVE_HISTORY_MB * 1024L * 1024);
+        }
+
+        /**
+         * Returns whether the history is printed, which is only when it is asked for
+         */
+        private boolean isHistoryShown() {
+            return myOwnLogStore && showHistory;
+        }
+
+        /**
+         * Decompresses the history and filters it, returning the lines that match with how they are printed.
+         * This is done in background, with a filter model of its own, so that only printing them is left for the UI thread.
+         */
+        private FilteredLines filterHistory(ProgressIndicator progressIndicator) {
+            final CompressedLogLines history = myHistory;
+            final LogViewerFilterModel filterModel = new LogViewerFilterModel();
+            final FilteredLines filteredLines = new FilteredLines();
+            filterModel.processingStarted();
+            int size = history.size();
+            for (int i = 0; i < size; i++) {
+                String line;
+                synchronized (history) {
+                    //the oldest blocks may be dropped while this runs
+                    if (i >= history.size()) {
+                        break;
+                    }
+                    line = history.getLine(i);
+                }
+                LogFilterModel.MyProcessingResult processingResult = filterModel.processLine(line);
+                if (processingResult.isApplicable()) {
+                    filteredLines.add(line, processingResult);
+                }
+                progressIndicator.setFraction((float) i / size);
+            }
+            return filteredLines;
+        }
+
+        /**
+         * Frees the memory of the store if the console owns it, the store of a provider is freed by the provider
+         */
+        void closeLogStore() {
+            if (myOwnLogStore) {
+                myLogStore.close();
+            }
+        }
+
+        /**
+         * Sets the lines that are shown before the lines of the store
+         */
+        void setLogLines(LogLines logLines) {
+            myLogLines = logLines;
+        }
+
+        /**
+         * Sets the lines that are shown before the lines of the store, of which the first count are new,
+         * and inserts the new ones that match the filters at the top of the console.
+         * The rest of the console is left as it is, and keeps showing the same lines.
+         */
+        void addOlderLines(LogLines logLines, int count) {
+            setLogLines(logLines);
+            ConsoleView console = getConsole();
+            Editor editor = console != null ? ((ConsoleViewImpl) console).getEditor() : null;
+            if (editor == null || count == 0) {
+                return;
+            }
+            //the lines go before the ones filtered so far, so they are filtered on their own
+            final LogViewerFilterModel filterModel = new LogViewerFilterModel();
+            filterModel.processingStarted();
+            StringBuilder text = new StringBuilder();
+            List<Integer> tokenEnds = new ArrayList<>();
+            List<ConsoleViewContentType> tokenTypes = new ArrayList<>();
+            int printedLines = 0;
+            for (int i = 0; i < count; i++) {
+                String line = logLines.getLine(i);
+                printedLines += printMessage(line, filterModel.processLine(line), (message, type) -> {
+                    text.append(message);
+                    tokenEnds.add(text.length());
+                    tokenTypes.add(type);
+                });
+            }
+            if (text.length() == 0) {
+                return;
+            }
+            ((ConsoleViewImpl) console).flushDeferredText();
+            ScrollingModel scrollingModel = editor.getScrollingModel();
+            int scrollOffset = scrollingModel.getVerticalScrollOffset();
+            int topLine = editor.xyToLogicalPosition(new Point(0, scrollOffset)).line;
+            int topLineOffset = scrollOffset - editor.logicalPositionToXY(new LogicalPosition(topLine, 0)).y;
+            Document document = editor.getDocument();
+            ApplicationManager.getApplication().runWriteAction(() -> document.insertString(0, text));
+            MarkupModel markupModel = editor.getMarkupModel();
+            int start = 0;
+            for (int i = 0; i < tokenEnds.size(); i++) {
+                int end = tokenEnds.get(i);
+                markupModel.addRangeHighlighter(start, end, HighlighterLayer.SYNTAX, tokenTypes.get(i).getAttributes(),
+                        HighlighterTargetArea.EXACT_RANGE);
+                start = end;
+            }
+            myLinesBeforeStore += printedLines;
+            //the caret moves with the text it is at, the view is moved down by the lines inserted above it
+            scrollingModel.disableAnimation();
+            scrollingModel.scrollVertically(editor.logicalPositionToXY(new LogicalPosition(topLine + printedLines, 0)).y + topLineOffset);
+            scrollingModel.enableAnimation();
         }
 
         /**
@@ -768,9 +1240,10 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
                 @Override
                 public void run(ProgressIndicator progressIndicator) {
                     try {
+                        final FilteredLines history = isHistoryShown() ? filterHistory(progressIndicator) : null;
                         UIUtil.invokeAndWaitIfNeeded((Runnable) () -> {
                             progressIndicator.setFraction(0);
-                            doFilter(progressIndicator);
+                            doFilter(progressIndicator, history);
                         });
                     } catch (Throwable ex) {
                         debug("Exception " + ex.getMessage());
@@ -781,25 +1254,61 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
                 public String getTaskName() {
                     return task;
                 }
+
+                @Override
+                public void onTaskIgnored() {
+                    //the history takes a while to filter, a refresh asked for meanwhile is run after it
+                    myRefreshPending = true;
+                }
+
+                @Override
+                public void onTaskComplete() {
+                    if (myRefreshPending) {
+                        myRefreshPending = false;
+                        refresh(task);
+                    }
+                }
             });
         }
 
 
         /**
          * Filters the console
+         *
+         * @param history Lines of the history that match the filters, or null if it is not shown
          */
-        private synchronized void doFilter(ProgressIndicator progressIndicator) {
+        private synchronized void doFilter(ProgressIndicator progressIndicator, FilteredLines history) {
             final ConsoleView console = getConsole();
-            String allLInes = getOriginalDocument().toString();
-            final String[] lines = allLInes.split("\n");
+            final LogLines logLines = myLogLines;
             if (console != null) {
                 console.clear();
             }
             myLogFilterModel.processingStarted();
-            int size = lines.length;
+            int linesSize = logLines != null ? logLines.size() : 0;
+            int historySize = history != null ? history.size() : 0;
+            final LogStore logStore = myLogStore;
+            //only the lines sent so far, the store of a provider may have more
+            int storeSize = myLogStoreSize;
+            int size = linesSize + historySize + storeSize;
             float current = 0;
-            for (String line : lines) {
-                printMessageToConsole(line);
+            int linesBeforeStore = 0;
+            for (int i = 0; i < linesSize; i++) {
+                linesBeforeStore += printMessageToConsole(logLines.getLine(i));
+                current++;
+                progressIndicator.setFraction(current / size);
+            }
+            for (int i = 0; i < historySize; i++) {
+                linesBeforeStore += printMessageToConsole(history.getLine(i), history.getResult(i));
+                current++;
+                progressIndicator.setFraction(current / size);
+            }
+            myLinesBeforeStore = linesBeforeStore;
+            boolean ownLogStore = myOwnLogStore;
+            for (int i = 0; i < storeSize; i++) {
+                int printedLines = printStoredLine(logStore, i);
+                if (ownLogStore) {
+                    myPrintedLines.setCount(i, printedLines);
+                }
                 current++;
                 progressIndicator.setFraction(current / size);
             }
@@ -809,11 +1318,43 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
         }
 
         /**
-         * Prints the message to console
+         * Prints the message to console, returns the number of lines printed
+         */
+        private int printMessageToConsole(String line) {
+            return printMessageToConsole(line, myLogFilterModel.processLine(line));
+        }
+
+        /**
+         * Prints the line of the store to console, filtering it on its columns so that only the lines shown are built in to text.
+         * Returns the number of lines printed.
+         */
+        private int printStoredLine(LogStore logStore, int index) {
+            final LogFilterModel.MyProcessingResult processingResult = myLogFilterModel.processStoredLine(logStore, index);
+            if (processingResult.isApplicable()) {
+                return printMessageToConsole(logStore.getLine(index), processingResult);
+            }
+            return 0;
+        }
+
+        /**
+         * Prints the message to console with the given result of the filter, returns the number of lines printed
          */
-        private void printMessageToConsole(String line) {
+        private int printMessageToConsole(String line, LogFilterModel.MyProcessingResult processingResult) {
             final ConsoleView console = getConsole();
-            final LogFilterModel.MyProcessingResult processingResult = myLogFilterModel.processLine(line);
+            return printMessage(line, processingResult, (text, type) -> {
+                if (console != null) {
+                    console.print(text, type);
+                }
+            });
+        }
+
+        /**
+         * Formats the message with the given result of the filter, and hands its text to the printer.
+         * Returns the number of lines printed.
+         */
+        private int printMessage(String line, LogFilterModel.MyProcessingResult processingResult,
+                                 BiConsumer<String, ConsoleViewContentType> printer) {
+            int printedLines = 0;
             if (processingResult.isApplicable()) {
                 final Key key = processingResult.getKey();
                 if (key != null) {
@@ -822,17 +1363,24 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
                         final String messagePrefix = processingResult.getMessagePrefix();
                         if (messagePrefix != null) {
                             String formattedPrefix = logFormatter.formatPrefix(messagePrefix);
-                            if (console != null) {
-                                console.print(formattedPrefix, type);
-                            }
+                            printer.accept(formattedPrefix, type);
+                            printedLines += countLines(formattedPrefix);
                         }
                         String formattedMessage = logFormatter.formatMessage(line);
-                        if (console != null) {
-                            console.print(formattedMessage + "\n", type);
-                        }
+                        printer.accept(formattedMessage + "\n", type);
+                        printedLines += countLines(formattedMessage) + 1;
                     }
                 }
             }
+            return printedLines;
+        }
+
+        private int countLines(String text) {
+            int lines = 0;
+            for (int i = text.indexOf('\n'); i != -1; i = text.indexOf('\n', i + 1)) {
+                lines++;
+            }
+            return lines;
         }
 
 
@@ -857,6 +1405,99 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
         }
     }
 
+    /**
+     * Lines that were filtered before they are printed, along with the results of the filter for them
+     */
+    private static final class FilteredLines {
+
+        private final List<String> lines = new ArrayList<>();
+        private final List<LogFilterModel.MyProcessingResult> results = new ArrayList<>();
+
+        private void add(String line, LogFilterModel.MyProcessingResult result) {
+            lines.add(line);
+            results.add(result);
+        }
+
+        private int size() {
+            return lines.size();
+        }
+
+        private String getLine(int index) {
+            return lines.get(index);
+        }
+
+        private LogFilterModel.MyProcessingResult getResult(int index) {
+            return results.get(index);
+        }
+    }
+
+    /**
+     * Number of lines printed to the console for each line of a store, from the oldest line, and the length of the line.
+     * The counts change with the filters, the lengths do not.
+     * They are kept in a ring, so that those of the oldest lines are removed in constant time.
+     */
+    private static final class PrintedLines {
+
+        private int[] counts = new int[1024];
+        private int[] lengths = new int[1024];
+        private int first;
+        private int size;
+        private long length;
+
+        private void add(int count, int lineLength) {
+            if (size == counts.length) {
+                int[] newCounts = new int[counts.length * 2];
+                int[] newLengths = new int[counts.length * 2];
+                for (int i = 0; i < size; i++) {
+                    newCounts[i] = counts[(first + i) % counts.length];
+                    newLengths[i] = lengths[(first + i) % counts.length];
+                }
+                counts = newCounts;
+                lengths = newLengths;
+                first = 0;
+            }
+            counts[(first + size) % counts.length] = count;
+            lengths[(first + size) % counts.length] = lineLength;
+            size++;
+            length += lineLength;
+        }
+
+        /**
+         * Sets the number of lines printed for the line at the given index, when it is printed again
+         */
+        private void setCount(int index, int count) {
+            counts[(first + index) % counts.length] = count;
+        }
+
+        /**
+         * Removes the given number of oldest lines, returns the number of lines printed for them
+         */
+        private int removeFirst(int lines) {
+            lines = Math.min(lines, size);
+            int printedLines = 0;
+            for (int i = 0; i < lines; i++) {
+                printedLines += counts[first];
+                length -= lengths[first];
+                first = (first + 1) % counts.length;
+            }
+            size -= lines;
+            return printedLines;
+        }
+
+        /**
+         * Returns the total length of the lines
+         */
+        private long getLength() {
+            return length;
+        }
+
+        private void clear() {
+            first = 0;
+            size = 0;
+            length = 0;
+        }
+    }
+
     /**
      * Action that performs the configuration
      */
@@ -882,7 +1523,7 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
         private final List<LogFilterListener> myListeners = ContainerUtil.createLockFreeCopyOnWriteList();
         private final StringBuilder myMessageSoFar = new StringBuilder();
         @Nullable
-        private LogCatHeader myPrevHeader;
+        private Log.LogLevel myPrevLevel;
         private boolean myCustomApplicable = false;
         private List<? extends LogFilter> filters = new ArrayList();
 
@@ -916,7 +1557,7 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
         }
 
         public void processingStarted() {
-            this.myPrevHeader = null;
+            this.myPrevLevel = null;
             this.myCustomApplicable = false;
             this.myMessageSoFar.setLength(0);
         }
@@ -934,7 +1575,7 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
             try {
                 message = AndroidLogcatFormatter.tryParseMessage(line);
                 continuation = message == null ? AndroidLogcatFormatter.tryParseContinuation(line) : null;
-                validContinuation = continuation != null && this.myPrevHeader != null;
+                validContinuation = continuation != null && this.myPrevLevel != null;
             } catch (Exception ignored) {
             }
 
@@ -942,7 +1583,7 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
                 return new MyProcessingResult(ProcessOutputTypes.STDOUT, canAcceptMessage(line), null);
             } else {
                 if (message != null) {
-                    this.myPrevHeader = message.getHeader();
+                    this.myPrevLevel = message.getHeader().getLogLevel();
                     this.myCustomApplicable = this.isMessageApplicable(message);
                     this.myMessageSoFar.setLength(0);
                 }
@@ -953,7 +1594,7 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
                     this.myMessageSoFar.append('\n');
                 }
 
-                Key key = AndroidLogcatUtils.getProcessOutputType(this.myPrevHeader.getLogLevel());
+                Key key = AndroidLogcatUtils.getProcessOutputType(this.myPrevLevel);
                 MyProcessingResult result = new MyProcessingResult(key, isApplicable, this.myMessageSoFar.toString());
                 if (isApplicable) {
                     this.myMessageSoFar.setLength(0);
@@ -962,6 +1603,73 @@ public abstract class LogView implements Disposable, GistCreator.GistListener, L
                 return result;
             }
         }
+
+        /**
+         * Processes the line of the store like {@link #processLine(String)}, using its columns instead of parsing it.
+         * Lines without a header, like the continuations of a message, are processed from their text.
+         */
+        @NotNull
+        MyProcessingResult processStoredLine(LogStore logStore, int index) {
+            if (!logStore.hasHeader(index)) {
+                return processLine(logStore.getLine(index));
+            }
+            this.myPrevLevel = Log.LogLevel.getByLetter(logStore.getLevel(index));
+            this.myCustomApplicable = canAccept(this.myPrevLevel, logStore, index);
+            this.myMessageSoFar.setLength(0);
+            return new MyProcessingResult(AndroidLogcatUtils.getProcessOutputType(this.myPrevLevel), this.myCustomApplicable, "");
+        }
+    }
+
+    /**
+     * Answers of the process and text filters for the names of a {@link LogDictionary}, by their ids.
+     * Each name is checked against the filters once, the first time it is met, instead of on every line.
+     */
+    private class NameFilters {
+
+        private static final int PROCESS_NAME = 0;
+        private static final int ADD_FILTERS = 2;
+        private static final int REMOVE_FILTERS = 4;
+
+        private final LogDictionary dictionary;
+        //two bits for each filter, whether the name was checked and whether it matched
+        private byte[] answers = new byte[256];
+
+        private NameFilters(LogDictionary dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        private String getName(int id) {
+            return dictionary.getName(id);
+        }
+
+        private boolean canAcceptProcessName(int id) {
+            return getAnswer(id, PROCESS_NAME);
+        }
+
+        private boolean isInAddFilters(int id) {
+            return getAnswer(id, ADD_FILTERS);
+        }
+
+        private boolean isInRemoveFilters(int id) {
+            return getAnswer(id, REMOVE_FILTERS);
+        }
+
+        private boolean getAnswer(int id, int filter) {
+            byte[] answers = this.answers;
+            if (id >= answers.length) {
+                answers = Arrays.copyOf(answers, Math.max(id + 1, answers.length * 2));
+                this.answers = answers;
+            }
+            int checked = 1 << filter;
+            int matched = 2 << filter;
+            if ((answers[id] & checked) == 0) {
+                String name = getName(id);
+                boolean answer = filter == PROCESS_NAME ? LogView.this.canAcceptProcessName(name)
+                        : isInFilter(name, filter == ADD_FILTERS ? addFilters : removeFilters);
+                answers[id] |= checked | (answer ? matched : 0);
+            }
+            return (answers[id] & matched) != 0;
+        }
     }
 
     /**
@@ -144,7 +144,7 @@ public class TarInputStream extends FilterInputStream {
         }
 
         if (!eof) {
-            bytesRead += header.length;
+            // the header was already counted as it was read
             currentEntry = new TarEntry( header );
         }
 
@@ -228,6 +228,16 @@ public class TarInputStream extends FilterInputStream {
         return n - left;
     }
 
+    /**
+     * Returns the number of bytes read from the underlying stream so far. After
+     * {@link #getNextEntry()} this is the offset of the data of the entry.
+     * 
+     * @return long
+     */
+    public long getCurrentOffset() {
+        return bytesRead;
+    }
+
     public boolean isDefaultSkip() {
         return defaultSkip;
     }
@@ -0,0 +1,128 @@
+package com.josesamuel.logviewer.log.file.reader;
+
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Inflates every span of a {@link GzipIndex} on its own, and compares it with the data read by {@link GZIPInputStream}.
+ * The data mixes log text with incompressible chunks, so that the deflate streams have stored blocks between the coded ones.
+ */
+public class GzipIndexTest {
+
+    private static final long SPAN = 64 * 1024;
+
+    @Test
+    public void spansOfFastestLevel() throws IOException {
+        checkSpans(1, 1);
+    }
+
+    @Test
+    public void spansOfDefaultLevel() throws IOException {
+        checkSpans(6, 1);
+    }
+
+    @Test
+    public void spansOfBestLevel() throws IOException {
+        checkSpans(9, 1);
+    }
+
+    @Test
+    public void spansOfSeveralMembers() throws IOException {
+        checkSpans(6, 3);
+    }
+
+    private static void checkSpans(int level, int members) throws IOException {
+        File file = File.createTempFile("gzipindex", ".gz");
+        try {
+            Random random = new Random(level * 31 + members);
+            try (OutputStream out = new FileOutputStream(file)) {
+                for (int i = 0; i < members; i++) {
+                    out.write(gzip(createData(random), level));
+                }
+            }
+            byte[] expected = gunzip(file);
+            GzipIndex index = new GzipIndexBuilder(file, SPAN).build();
+            assertEquals("uncompressed length", expected.length, index.getUncompressedLength());
+            assertTrue("spans " + index.getSpanCount(), index.getSpanCount() > 8);
+            try (FileChannel channel = new FileInputStream(file).getChannel()) {
+                for (int span = 0; span < index.getSpanCount(); span++) {
+                    int start = (int) index.getSpanStart(span);
+                    int end = (int) index.getSpanStart(span + 1);
+                    assertArrayEquals("span " + span, Arrays.copyOfRange(expected, start, end), index.inflateSpan(channel, span));
+                }
+                try (InputStream in = index.openStream(channel, expected.length / 3)) {
+                    assertArrayEquals("stream from an offset", Arrays.copyOfRange(expected, expected.length / 3, expected.length), readAll(in));
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Returns log lines with random bytes in between, which deflate keeps in stored blocks
+     */
+    private static byte[] createData(Random random) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (int chunk = 0; chunk < 40; chunk++) {
+            int lines = 200 + random.nextInt(2000);
+            for (int i = 0; i < lines; i++) {
+                String line = String.format("01-%02d 12:%02d:%02d.%03d  %4d  %4d %s Tag%d: message %d of chunk %d %s\n",
+                        1 + chunk % 28, i % 60, random.nextInt(60), random.nextInt(1000), 1000 + random.nextInt(50),
+                        2000 + random.nextInt(500), "VDIWE".charAt(random.nextInt(5)), random.nextInt(20), i, chunk,
+                        Long.toHexString(random.nextLong()));
+                byte[] bytes = line.getBytes();
+                data.write(bytes, 0, bytes.length);
+            }
+            byte[] noise = new byte[random.nextInt(100 * 1024)];
+            random.nextBytes(noise);
+            data.write(noise, 0, noise.length);
+        }
+        return data.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] data, int level) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(File file) throws IOException {
+        try (InputStream in = new GZIPInputStream(new FileInputStream(file))) {
+            return readAll(in);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+}